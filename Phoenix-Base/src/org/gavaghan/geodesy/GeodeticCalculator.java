@@ -223,7 +223,7 @@ public class GeodeticCalculator
       double lambda0;
       boolean converged = false;
 
-      for (int i = 0; i < 20; i++)
+      for (int i = 0; i < MaxIterations; i++)
       {
          lambda0 = lambda;
 
@@ -325,6 +325,198 @@ public class GeodeticCalculator
       return new GeodeticCurve(s, alpha1, alpha2);
    }
 
+   /** WGS84 constants used by distance, computed as in calculateGeodeticCurve. */
+   static private final double WGS84A = Ellipsoid.WGS84.getSemiMajorAxis();
+   static private final double WGS84B = Ellipsoid.WGS84.getSemiMinorAxis();
+   static private final double WGS84F = Ellipsoid.WGS84.getFlattening();
+   static private final double WGS84OneMinusF = 1.0 - WGS84F;
+   static private final double WGS84A2B2B2 = (WGS84A * WGS84A - WGS84B * WGS84B) / (WGS84B * WGS84B);
+
+   /** Iterations after which calculateGeodeticCurve and distance give up on convergence. */
+   static public final int MaxIterations = 20;
+
+   /**
+    * Calculate the ellipsoidal distance between two points on the WGS84
+    * ellipsoid. The result is exactly the ellipsoidal distance of
+    * calculateGeodeticCurve(Ellipsoid.WGS84, start, end), but no object is
+    * allocated and the azimuths are not computed.
+    * 
+    * @param startLatitude starting latitude (degrees)
+    * @param startLongitude starting longitude (degrees)
+    * @param endLatitude ending latitude (degrees)
+    * @param endLongitude ending longitude (degrees)
+    * @return ellipsoidal distance (meters)
+    */
+   static public double distance(double startLatitude, double startLongitude, double endLatitude, double endLongitude)
+   {
+      double U1 = reducedLatitude(startLatitude);
+      double U2 = reducedLatitude(endLatitude);
+
+      return distance(Math.sin(U1), Math.cos(U1), longitudeRadians(startLatitude, startLongitude), Math.sin(U2), Math.cos(U2),
+            longitudeRadians(endLatitude, endLongitude));
+   }
+
+   /**
+    * Calculate the reduced latitude of a point on the WGS84 ellipsoid, as used
+    * by distance. Callers that measure many distances from the same point can
+    * compute its sine and cosine once.
+    * 
+    * @param latitude latitude (degrees)
+    * @return reduced latitude (radians)
+    */
+   static public double reducedLatitude(double latitude)
+   {
+      return Math.atan(WGS84OneMinusF * Math.tan(Angle.toRadians(canonicalLatitude(latitude))));
+   }
+
+   /**
+    * Calculate the canonicalized longitude of a point, as used by distance.
+    * 
+    * @param latitude latitude (degrees)
+    * @param longitude longitude (degrees)
+    * @return longitude (radians)
+    */
+   static public double longitudeRadians(double latitude, double longitude)
+   {
+      return Angle.toRadians(canonicalLongitude(latitude, longitude));
+   }
+
+   /**
+    * Calculate the ellipsoidal distance between two points on the WGS84
+    * ellipsoid, given the sine and cosine of their reduced latitudes and
+    * their longitudes as returned by reducedLatitude and longitudeRadians.
+    * 
+    * @param sinU1 sine of the starting reduced latitude
+    * @param cosU1 cosine of the starting reduced latitude
+    * @param lambda1 starting longitude (radians)
+    * @param sinU2 sine of the ending reduced latitude
+    * @param cosU2 cosine of the ending reduced latitude
+    * @param lambda2 ending longitude (radians)
+    * @return ellipsoidal distance (meters)
+    */
+   static public double distance(double sinU1, double cosU1, double lambda1, double sinU2, double cosU2, double lambda2)
+   {
+      return distance(sinU1, cosU1, lambda1, sinU2, cosU2, lambda2, MaxIterations);
+   }
+
+   /**
+    * Calculate the ellipsoidal distance between two points on the WGS84
+    * ellipsoid like distance, but stop after the specified number of
+    * iterations even if lambda has not converged yet. With MaxIterations the
+    * result is exactly the one of distance.
+    * 
+    * @param sinU1 sine of the starting reduced latitude
+    * @param cosU1 cosine of the starting reduced latitude
+    * @param lambda1 starting longitude (radians)
+    * @param sinU2 sine of the ending reduced latitude
+    * @param cosU2 cosine of the ending reduced latitude
+    * @param lambda2 ending longitude (radians)
+    * @param iterations maximum number of iterations (at least 1)
+    * @return ellipsoidal distance (meters)
+    */
+   static public double distance(double sinU1, double cosU1, double lambda1, double sinU2, double cosU2, double lambda2, int iterations)
+   {
+      double omega = lambda2 - lambda1;
+
+      double sinU1sinU2 = sinU1 * sinU2;
+      double cosU1sinU2 = cosU1 * sinU2;
+      double sinU1cosU2 = sinU1 * cosU2;
+      double cosU1cosU2 = cosU1 * cosU2;
+
+      // eq. 13
+      double lambda = omega;
+
+      double A = 0.0;
+      double sigma = 0.0;
+      double deltasigma = 0.0;
+      double lambda0;
+
+      for (int i = 0; i < iterations; i++)
+      {
+         lambda0 = lambda;
+
+         double sinlambda = Math.sin(lambda);
+         double coslambda = Math.cos(lambda);
+
+         // eq. 14
+         double sin2sigma = (cosU2 * sinlambda * cosU2 * sinlambda) + (cosU1sinU2 - sinU1cosU2 * coslambda) * (cosU1sinU2 - sinU1cosU2 * coslambda);
+         double sinsigma = Math.sqrt(sin2sigma);
+
+         // eq. 15
+         double cossigma = sinU1sinU2 + (cosU1cosU2 * coslambda);
+
+         // eq. 16
+         sigma = Math.atan2(sinsigma, cossigma);
+
+         // eq. 17 Careful! sin2sigma might be almost 0!
+         double sinalpha = (sin2sigma == 0) ? 0.0 : cosU1cosU2 * sinlambda / sinsigma;
+         double alpha = Math.asin(sinalpha);
+         double cosalpha = Math.cos(alpha);
+         double cos2alpha = cosalpha * cosalpha;
+
+         // eq. 18 Careful! cos2alpha might be almost 0!
+         double cos2sigmam = cos2alpha == 0.0 ? 0.0 : cossigma - 2 * sinU1sinU2 / cos2alpha;
+         double u2 = cos2alpha * WGS84A2B2B2;
+
+         double cos2sigmam2 = cos2sigmam * cos2sigmam;
+
+         // eq. 3
+         A = 1.0 + u2 / 16384 * (4096 + u2 * (-768 + u2 * (320 - 175 * u2)));
+
+         // eq. 4
+         double B = u2 / 1024 * (256 + u2 * (-128 + u2 * (74 - 47 * u2)));
+
+         // eq. 6
+         deltasigma = B * sinsigma
+               * (cos2sigmam + B / 4 * (cossigma * (-1 + 2 * cos2sigmam2) - B / 6 * cos2sigmam * (-3 + 4 * sin2sigma) * (-3 + 4 * cos2sigmam2)));
+
+         // eq. 10
+         double C = WGS84F / 16 * cos2alpha * (4 + WGS84F * (4 - 3 * cos2alpha));
+
+         // eq. 11 (modified)
+         lambda = omega + (1 - C) * WGS84F * sinalpha * (sigma + C * sinsigma * (cos2sigmam + C * cossigma * (-1 + 2 * cos2sigmam2)));
+
+         // see how much improvement we got
+         double change = Math.abs((lambda - lambda0) / lambda);
+
+         if ((i > 1) && (change < 0.0000000000001)) break;
+      }
+
+      // eq. 19
+      return WGS84B * A * (sigma - deltasigma);
+   }
+
+   /**
+    * Latitude as canonicalized by GlobalCoordinates.
+    */
+   static private double canonicalLatitude(double latitude)
+   {
+      latitude = (latitude + 180) % 360;
+      if (latitude < 0) latitude += 360;
+      latitude -= 180;
+
+      if (latitude > 90) return 180 - latitude;
+      if (latitude < -90) return -180 - latitude;
+      return latitude;
+   }
+
+   /**
+    * Longitude as canonicalized by GlobalCoordinates, which moves it to the
+    * opposite meridian when the latitude crosses a pole.
+    */
+   static private double canonicalLongitude(double latitude, double longitude)
+   {
+      latitude = (latitude + 180) % 360;
+      if (latitude < 0) latitude += 360;
+      latitude -= 180;
+
+      if ((latitude > 90) || (latitude < -90)) longitude += 180;
+
+      longitude = ((longitude + 180) % 360);
+      if (longitude <= 0) longitude += 360;
+      return longitude - 180;
+   }
+
    /**
     * <p>
     * Calculate the three dimensional geodetic measurement between two positions
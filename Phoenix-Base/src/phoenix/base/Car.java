@@ -1,14 +1,19 @@
 package phoenix.base;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Rappresenta un'auto del servizio Car Sharing.
  * 
  * Contiene le stesse informazioni contenute nel database, ma fornisce implementazioni custom per hashCode e equals, in modo da consentirne l'utilizzo all'interno delle ConcurrentHashMap.
  * 
+ * @discussion Ogni istanza ha inoltre uno stato di prelievo, modificato con un'operazione atomica di compare-and-set:
+ * tra tutti i thread che chiamano tryClaim sulla stessa istanza, soltanto uno ottiene l'auto, senza bisogno di alcun lock.
+ * Lo stato non viene trasmesso: un'auto deserializzata è sempre disponibile.
+ * 
  * @author Alessio Moiso
- * @version 1.0
+ * @version 1.1
  */
 public class Car implements Serializable {
 	
@@ -20,6 +25,13 @@ public class Car implements Serializable {
 	private String plate;
 	private CarType type;
 	
+	private static final int Available = 0;
+	private static final int Claimed = 1;
+	
+	private static final AtomicIntegerFieldUpdater<Car> ClaimState = AtomicIntegerFieldUpdater.newUpdater(Car.class, "claimState");
+	
+	private transient volatile int claimState = Available;
+	
 	public Car(Integer id, String name, String color, String plate, CarType type) {
 		this.id = id;
 		this.name = name;
@@ -52,6 +64,26 @@ public class Car implements Serializable {
 		return this.id;
 	}
 	
+	/**
+	 * Prova a prelevare l'auto.
+	 * 
+	 * @return true se l'auto era disponibile ed è stata prelevata da questa chiamata
+	 */
+	public boolean tryClaim() {
+		return ClaimState.compareAndSet(this, Available, Claimed);
+	}
+	
+	/**
+	 * Rende nuovamente disponibile l'auto, ad esempio quando viene parcheggiata.
+	 */
+	public void release() {
+		this.claimState = Available;
+	}
+	
+	public boolean isClaimed() {
+		return this.claimState == Claimed;
+	}
+	
 	@Override
 	public int hashCode() {
 		final int prime = 31;
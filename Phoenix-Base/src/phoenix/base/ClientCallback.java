@@ -7,7 +7,7 @@ import java.rmi.RemoteException;
  * Modella il callback da passare al Server durante un'operazione di ricerca o consegna di un'auto.
  * 
  * @author Alessio Moiso
- * @version 1.0
+ * @version 1.1
  */
 public interface ClientCallback extends Remote {
 
@@ -15,4 +15,9 @@ public interface ClientCallback extends Remote {
 	
 	public void setCar(Car car) throws RemoteException;
 	
+	/**
+	 * Avvisa il Client che la sua richiesta è rimasta in attesa troppo a lungo ed è stata annullata dal Server.
+	 */
+	public void requestExpired() throws RemoteException;
+
 }
@@ -1,5 +1,9 @@
 package phoenix.base;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 import org.gavaghan.geodesy.Ellipsoid;
@@ -9,49 +13,231 @@ import org.gavaghan.geodesy.GlobalPosition;
 /**
  * Rappresenta un punto su una mappa, con latitudine, longitudine e altitudine.
  * 
+ * @discussion getDistance calcola la distanza sull'ellissoide WGS84 con il metodo iterativo di Vincenty, che è costoso.
+ * isWithin controlla invece se un punto si trova entro un raggio in tre passi: scarta i punti fuori dal rettangolo
+ * che contiene il cerchio, poi stima la distanza su una sfera (formula dell'emisenoverso) ed infine, solo se la stima
+ * è troppo vicina al raggio per decidere, usa getDistance. Il risultato è sempre lo stesso di getDistance(other) < range.
+ * 
+ * Le coordinate sono memorizzate come double; i valori in radianti e il seno e il coseno della latitudine ridotta
+ * (usati dal metodo di Vincenty) vengono calcolati una volta sola, alla creazione o alla deserializzazione.
+ * Per compatibilità con le versioni precedenti, le coordinate vengono serializzate come Double con gli stessi nomi.
+ * 
+ * distanceTo(other, accuracy) permette a chi non ha bisogno della distanza esatta di scegliere un calcolo più economico:
+ * la formula dell'emisenoverso sulla sfera oppure il metodo di Vincenty con un numero fisso di iterazioni.
+ * 
  * @author Alessio Moiso
- * @version 1.0
+ * @version 1.3
  */
 public class GPSPosition implements Serializable {
 	
 	private static final long serialVersionUID = 8006800713668899013L;
 	
-	private Double latitude;
-	private Double longitude;
-	private Double altitude;
+	/**
+	 * Esiti di estimateRange.
+	 */
+	public static final int OutsideBoundingBox = 0;
+	public static final int OutsideEstimate = 1;
+	public static final int InsideEstimate = 2;
+	public static final int Borderline = 3;
+	
+	/**
+	 * Livelli di precisione di distanceTo, con l'errore relativo massimo rispetto a ExactAccuracy misurato tra punti
+	 * dell'area di Genova (tra User.topLeft e User.bottomRight, cioè fino a circa 10 km).
+	 * SphericalAccuracy (emisenoverso sulla sfera di raggio medio): errore inferiore allo 0,3%, cioè al più 27 metri.
+	 * BoundedAccuracy (BoundedIterations iterazioni del metodo di Vincenty): errore inferiore a 3 milionesimi, cioè al più 3 centimetri.
+	 * ExactAccuracy (metodo di Vincenty fino a convergenza, al più GeodeticCalculator.MaxIterations iterazioni): lo stesso risultato di getDistance.
+	 */
+	public static final int SphericalAccuracy = 0;
+	public static final int BoundedAccuracy = 1;
+	public static final int ExactAccuracy = 2;
+	
+	public static final double SphericalError = 0.003;
+	public static final double BoundedError = 0.000003;
+	
+	private static final int BoundedIterations = 2;
+	
+	/**
+	 * Lunghezza minima di un grado di latitudine (raggio di curvatura del meridiano all'equatore), in km.
+	 */
+	public static final double MinKilometersPerLatitudeDegree = Math.toRadians(Ellipsoid.WGS84.getSemiMajorAxis() * (1 - Ellipsoid.WGS84.getFlattening()) * (1 - Ellipsoid.WGS84.getFlattening()) / 1000);
+	
+	/**
+	 * Lunghezza di un grado di longitudine all'equatore, in km: a latitudine φ la lunghezza è almeno questo valore per cos(φ).
+	 */
+	public static final double KilometersPerLongitudeDegree = Math.toRadians(Ellipsoid.WGS84.getSemiMajorAxis() / 1000);
+	
+	/**
+	 * Raggio medio della Terra, in km, ed errore relativo ammesso per la stima sulla sfera:
+	 * sull'ellissoide la distanza differisce da quella sulla sfera di meno dello 0,6%.
+	 */
+	private static final double MeanEarthRadius = 6371.0088;
+	private static final double EstimateMargin = 0.01;
+	
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("altitude", Double.class),
+		new ObjectStreamField("latitude", Double.class),
+		new ObjectStreamField("longitude", Double.class)
+	};
+	
+	private double latitude;
+	private double longitude;
+	private double altitude;
 	
-	public GPSPosition(Double latitude, Double longitude) {
+	/**
+	 * Latitudine e longitudine in radianti e coseno della latitudine, per la stima sulla sfera.
+	 */
+	private transient double latitudeRadians;
+	private transient double longitudeRadians;
+	private transient double cosLatitude;
+	
+	/**
+	 * Seno e coseno della latitudine ridotta e longitudine normalizzata in radianti, per il metodo di Vincenty.
+	 */
+	private transient double sinReducedLatitude;
+	private transient double cosReducedLatitude;
+	private transient double geodeticLongitude;
+	
+	public GPSPosition(double latitude, double longitude) {
 		this(latitude, longitude, 0.0);
 	}
 	
-	public GPSPosition(Double latitude, Double longitude, Double altitude) {
+	public GPSPosition(double latitude, double longitude, double altitude) {
 		this.latitude = latitude;
 		this.longitude = longitude;
 		this.altitude = altitude;
+		
+		precompute();
 	}
 	
-	public Double getLatitude() {
+	public double getLatitude() {
 		return this.latitude;
 	}
 	
-	public Double getLongitude() {
+	public double getLongitude() {
 		return this.longitude;
 	}
 	
-	public Double getAltitude() {
+	public double getAltitude() {
 		return this.altitude;
 	}
 	
 	public Double getDistance(GPSPosition otherPosition) {
-		GeodeticCalculator geoCalc = new GeodeticCalculator();
-
-		Ellipsoid reference = Ellipsoid.WGS84;
+		return distanceTo(otherPosition);
+	}
+	
+	/**
+	 * Calcola la distanza come getDistance, senza allocare oggetti.
+	 * 
+	 * @param otherPosition: L'altro punto
+	 * @return La distanza sull'ellissoide WGS84, in km
+	 */
+	public double distanceTo(GPSPosition otherPosition) {
+		return GeodeticCalculator.distance(otherPosition.sinReducedLatitude, otherPosition.cosReducedLatitude, otherPosition.geodeticLongitude,
+				this.sinReducedLatitude, this.cosReducedLatitude, this.geodeticLongitude) / 1000;
+	}
+	
+	/**
+	 * Calcola la distanza con il livello di precisione specificato.
+	 * 
+	 * @param otherPosition: L'altro punto
+	 * @param accuracy: SphericalAccuracy, BoundedAccuracy oppure ExactAccuracy
+	 * @return La distanza, in km
+	 */
+	public double distanceTo(GPSPosition otherPosition, int accuracy) {
+		switch (accuracy) {
+		case SphericalAccuracy:
+			return haversine(otherPosition);
 		
-		GlobalPosition currentGlobal = new GlobalPosition(this.latitude, this.longitude, this.altitude);
-		GlobalPosition otherGlobal = new GlobalPosition(otherPosition.latitude, otherPosition.longitude, otherPosition.altitude);
-
-		double distance = geoCalc.calculateGeodeticCurve(reference, otherGlobal, currentGlobal).getEllipsoidalDistance();
-		return distance / 1000;
+		case BoundedAccuracy:
+			return GeodeticCalculator.distance(otherPosition.sinReducedLatitude, otherPosition.cosReducedLatitude, otherPosition.geodeticLongitude,
+					this.sinReducedLatitude, this.cosReducedLatitude, this.geodeticLongitude, BoundedIterations) / 1000;
+		
+		default:
+			return distanceTo(otherPosition);
+		}
+	}
+	
+	/**
+	 * Controlla se un altro punto si trova a distanza inferiore al raggio specificato.
+	 * 
+	 * @param otherPosition: L'altro punto
+	 * @param range: Il raggio, in km
+	 * @return Lo stesso risultato di getDistance(otherPosition) < range, calcolando getDistance solo quando serve
+	 */
+	public boolean isWithin(GPSPosition otherPosition, double range) {
+		int estimate = estimateRange(otherPosition, range);
+		
+		if (estimate == Borderline) {
+			return distanceTo(otherPosition) < range;
+		}
+		
+		return estimate == InsideEstimate;
+	}
+	
+	/**
+	 * Stima, senza calcolare la distanza esatta, se un altro punto si trova entro il raggio specificato.
+	 * 
+	 * @param otherPosition: L'altro punto
+	 * @param range: Il raggio, in km
+	 * @return OutsideBoundingBox oppure OutsideEstimate se il punto è certamente fuori dal raggio, InsideEstimate se è certamente
+	 * all'interno, Borderline se per decidere occorre la distanza esatta
+	 */
+	public int estimateRange(GPSPosition otherPosition, double range) {
+		double latitudeGap = Math.abs(this.latitude - otherPosition.latitude);
+		if (latitudeGap * MinKilometersPerLatitudeDegree >= range) return OutsideBoundingBox;
+		
+		double longitudeGap = Math.abs(this.longitude - otherPosition.longitude) % 360;
+		longitudeGap = Math.min(longitudeGap, 360 - longitudeGap);
+		
+		// Un percorso più corto del raggio non si allontana dai due punti di più di range in latitudine.
+		double widestParallel = Math.max(Math.abs(this.latitude), Math.abs(otherPosition.latitude)) + range / MinKilometersPerLatitudeDegree;
+		if (widestParallel < 90 && longitudeGap * KilometersPerLongitudeDegree * Math.cos(Math.toRadians(widestParallel)) >= range) return OutsideBoundingBox;
+		
+		double estimate = haversine(otherPosition);
+		
+		if (estimate * (1 - EstimateMargin) >= range) return OutsideEstimate;
+		if (estimate * (1 + EstimateMargin) < range) return InsideEstimate;
+		
+		return Borderline;
+	}
+	
+	/**
+	 * Calcola la distanza sulla sfera di raggio medio, in km.
+	 */
+	private double haversine(GPSPosition otherPosition) {
+		double sinLatitude = Math.sin((otherPosition.latitudeRadians - this.latitudeRadians) / 2);
+		double sinLongitude = Math.sin((otherPosition.longitudeRadians - this.longitudeRadians) / 2);
+		double haversine = sinLatitude * sinLatitude + this.cosLatitude * otherPosition.cosLatitude * sinLongitude * sinLongitude;
+		
+		return 2 * MeanEarthRadius * Math.asin(Math.min(1, Math.sqrt(haversine)));
+	}
+	
+	private void precompute() {
+		this.latitudeRadians = Math.toRadians(this.latitude);
+		this.longitudeRadians = Math.toRadians(this.longitude);
+		this.cosLatitude = Math.cos(this.latitudeRadians);
+		
+		double reducedLatitude = GeodeticCalculator.reducedLatitude(this.latitude);
+		this.sinReducedLatitude = Math.sin(reducedLatitude);
+		this.cosReducedLatitude = Math.cos(reducedLatitude);
+		this.geodeticLongitude = GeodeticCalculator.longitudeRadians(this.latitude, this.longitude);
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("altitude", Double.valueOf(this.altitude));
+		fields.put("latitude", Double.valueOf(this.latitude));
+		fields.put("longitude", Double.valueOf(this.longitude));
+		out.writeFields();
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		this.altitude = (Double) fields.get("altitude", Double.valueOf(0));
+		this.latitude = (Double) fields.get("latitude", null);
+		this.longitude = (Double) fields.get("longitude", null);
+		
+		precompute();
 	}
 	
 	@Override
@@ -1,18 +1,30 @@
 package phoenix.base;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Rappresenta un parcheggio del sistema.
  * 
  * Possiede un Set di Car che contiene l'elenco delle auto attualmente parcheggiate.
+ * Il Set è thread-safe, in modo che lo stesso ParkingLot possa essere letto e modificato contemporaneamente da più thread del Server.
  * Implementa Iterable per facilitarne la lettura.
  * 
+ * Le auto sono inoltre indicizzate per tipo: pollCar preleva un'auto del tipo richiesto senza scorrere l'intero parcheggio.
+ * Un'auto viene prelevata, sia da pollCar sia da remove, solo da chi riesce a cambiarne lo stato tramite Car.tryClaim:
+ * due thread non possono quindi ottenere la stessa auto, senza alcun lock sul parcheggio.
+ * L'indice non viene trasmesso al Client e viene ricostruito alla deserializzazione.
+ * 
  * @author Alessio Moiso
- * @version 1.0
+ * @version 1.2
  */
 public class ParkingLot implements Serializable, Iterable<Car> {
 	
@@ -25,33 +37,120 @@ public class ParkingLot implements Serializable, Iterable<Car> {
 	private Integer lots;
 	private Set<Car> cars;
 	
+	/**
+	 * Le auto disponibili per ogni tipo, indicizzate tramite l'ID del tipo.
+	 */
+	private transient ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Car>> carsByType;
+	private transient ConcurrentHashMap<Integer, AtomicInteger> countsByType;
+	
 	public ParkingLot(Integer id, String name, String address, Double latitude, Double longitude, Double altitude, Integer lots) {
 		this.id = id;
 		this.name = name;
 		this.address = address;
 		this.position = new GPSPosition(latitude, longitude, altitude);
 		this.lots = lots;
-		this.cars = new HashSet<Car>();
+		this.cars = ConcurrentHashMap.newKeySet();
+		this.carsByType = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Car>>();
+		this.countsByType = new ConcurrentHashMap<Integer, AtomicInteger>();
 	}
 	
 	public void add(Car car) {
-		this.cars.add(car);
+		if (this.cars.add(car)) {
+			Integer type = typeOf(car);
+			
+			car.release();
+			countOf(type).incrementAndGet();
+			this.carsByType.computeIfAbsent(type, key -> new ConcurrentLinkedQueue<Car>()).add(car);
+		}
 	}
 	
 	public void addAll(Set<Car> cars) {
-		this.cars.addAll(cars);
+		for (Car car : cars) {
+			add(car);
+		}
 	}
 	
-	public void remove(Car car) {
-		this.cars.remove(car);
+	/**
+	 * Rimuove un'auto dal parcheggio.
+	 * 
+	 * @discussion L'auto viene cercata scorrendo la coda delle auto del suo tipo, e la rimozione dalla coda la scorre di nuovo:
+	 * il costo è quindi O(n) nel numero di auto di quel tipo presenti nel parcheggio. Per ottenere un'auto qualsiasi di un tipo
+	 * va usato pollCar, che invece preleva la prima auto della coda senza scorrerla.
+	 * 
+	 * @param car: L'auto da rimuovere
+	 * @return true se l'auto era presente ed è stata rimossa da questa chiamata
+	 */
+	public boolean remove(Car car) {
+		Integer type = typeOf(car);
+		ConcurrentLinkedQueue<Car> queue = this.carsByType.get(type);
+		if (queue == null) return false;
+		
+		// L'auto ricevuta potrebbe essere una copia: viene prelevata l'istanza che si trova nel parcheggio.
+		for (Car parkedCar : queue) {
+			if (parkedCar.equals(car) && parkedCar.tryClaim()) {
+				queue.remove(parkedCar);
+				this.cars.remove(parkedCar);
+				countOf(type).decrementAndGet();
+				return true;
+			}
+		}
+		
+		return false;
 	}
 	
 	public void removeAll(Set<Car> cars) {
-		this.cars.removeAll(cars);
+		for (Car car : cars) {
+			remove(car);
+		}
+	}
+	
+	/**
+	 * Preleva dal parcheggio un'auto del tipo specificato.
+	 * 
+	 * @param typeId: L'ID del tipo di auto richiesto
+	 * @return Un'auto del tipo richiesto, rimossa dal parcheggio da questa chiamata, oppure null se non vi sono auto disponibili di quel tipo
+	 */
+	public Car pollCar(Integer typeId) {
+		ConcurrentLinkedQueue<Car> queue = this.carsByType.get(typeId);
+		if (queue == null) return null;
+		
+		Car car;
+		while ((car = queue.poll()) != null) {
+			if (car.tryClaim()) {
+				this.cars.remove(car);
+				countOf(typeId).decrementAndGet();
+				return car;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Restituisce il numero di auto disponibili del tipo specificato.
+	 */
+	public int getAvailableCount(Integer typeId) {
+		AtomicInteger count = this.countsByType.get(typeId);
+		return (count == null) ? 0 : count.get();
+	}
+	
+	/**
+	 * Restituisce il numero di auto disponibili per ogni tipo presente nel parcheggio.
+	 */
+	public HashMap<Integer, Integer> getAvailableCounts() {
+		HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		
+		for (Map.Entry<Integer, AtomicInteger> count : this.countsByType.entrySet()) {
+			if (count.getValue().get() > 0) {
+				counts.put(count.getKey(), count.getValue().get());
+			}
+		}
+		
+		return counts;
 	}
 	
 	public boolean isInRange(GPSPosition clientPosition, Double searchRange) {
-		return this.position.getDistance(clientPosition) < searchRange;
+		return this.position.isWithin(clientPosition, searchRange);
 	}
 	
 	public boolean contains(Car car) {
@@ -100,6 +199,28 @@ public class ParkingLot implements Serializable, Iterable<Car> {
 		return true;
 	}
 
+	/**
+	 * Restituisce la chiave con cui l'auto viene indicizzata: l'ID del suo tipo, oppure -1 se il tipo non è noto.
+	 */
+	private static Integer typeOf(Car car) {
+		return (car.getType() == null || car.getType().getId() == null) ? -1 : car.getType().getId();
+	}
+	
+	private AtomicInteger countOf(Integer type) {
+		return this.countsByType.computeIfAbsent(type, key -> new AtomicInteger());
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		
+		Set<Car> cars = this.cars;
+		this.cars = ConcurrentHashMap.newKeySet();
+		this.carsByType = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Car>>();
+		this.countsByType = new ConcurrentHashMap<Integer, AtomicInteger>();
+		
+		addAll(cars);
+	}
+	
 	@Override
 	public Iterator<Car> iterator() {
 		return this.cars.iterator();
@@ -112,4 +233,12 @@ public class ParkingLot implements Serializable, Iterable<Car> {
 	public String getName() {
 		return this.name;
 	}
+	
+	public String getAddress() {
+		return this.address;
+	}
+	
+	public Integer getLots() {
+		return this.lots;
+	}
 }
@@ -101,6 +101,22 @@ public class User implements Serializable {
 		return this.email;
 	}
 	
+	public String getName() {
+		return this.name;
+	}
+	
+	public String getSurname() {
+		return this.surname;
+	}
+	
+	public String getHashedPassword() {
+		return this.hashedPassword;
+	}
+	
+	public String getSaltPassword() {
+		return this.saltPassword;
+	}
+	
 	public SessionToken getSessionToken() {
 		return this.session;
 	}
@@ -168,10 +168,13 @@ public class Main {
 				try {
 					client.searchCar(selectedType, range);
 					
-					// Attende finché il Server non ha contattato il callback, impostando il collegamento all'auto
-					client.getCurrentCar();
-					
-					System.out.println("\n\n L'auto ti è stata assegnata con successo! Buon viaggio!");
+					// Attende finché il Server non ha contattato il callback, impostando il collegamento all'auto o annullando la richiesta
+					if (client.getCurrentCar() == null) {
+						System.out.println("\n\nATTENZIONE: La tua richiesta è scaduta: non è stato possibile trovare un'auto del tipo selezionato in tempo. Riprova più tardi o con un raggio più ampio.");
+					}
+					else {
+						System.out.println("\n\n L'auto ti è stata assegnata con successo! Buon viaggio!");
+					}
 				} catch (RemoteException e1) {
 					e1.printStackTrace();
 					logStandardConnectionError(e1);
@@ -10,9 +10,10 @@ import phoenix.base.ClientCallback;
  * Rappresenta il callback che viene passato al Server durante le operazioni di ricerca a consegna auto.
  * 
  * Considerato che anche la classe User ha un collegamento all'auto, sarà compito del Client decidere quale auto tenere in considerazione.
+ * Se la richiesta scade, getCar smette di attendere e restituisce null.
  * 
  * @author Alessio Moiso
- * @version 1.0
+ * @version 1.1
  * @see PhoenixClient
  */
 public class PhoenixClientCallback extends UnicastRemoteObject implements ClientCallback {
@@ -20,6 +21,7 @@ public class PhoenixClientCallback extends UnicastRemoteObject implements Client
 	private static final long serialVersionUID = -4848459072379098363L;
 	
 	private Car car;
+	private volatile boolean expired = false;
 	
 	public PhoenixClientCallback() throws RemoteException {
 		super();
@@ -35,8 +37,13 @@ public class PhoenixClientCallback extends UnicastRemoteObject implements Client
 		this.car = car;
 	}
 	
+	@Override
+	public void requestExpired() throws RemoteException {
+		this.expired = true;
+	}
+	
 	public Car getCar() throws RemoteException {
-		while (this.car == null) {
+		while (this.car == null && !this.expired) {
 			try {
 				Thread.sleep(10);
 			} catch (InterruptedException e) { }
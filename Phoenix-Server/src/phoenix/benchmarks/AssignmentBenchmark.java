@@ -0,0 +1,204 @@
+package phoenix.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import phoenix.fleet.Assignment;
+
+/**
+ * Controlla e confronta i due metodi di Assignment.
+ * 
+ * Prima confronta, su molti problemi casuali piccoli, Assignment.optimal con la ricerca esaustiva di tutti gli assegnamenti
+ * (massimo numero di coppie, poi costo minimo) e controlla che Assignment.greedy restituisca un assegnamento valido e massimale
+ * (nessuna riga libera ha una coppia ammessa con una colonna non piena). Poi, per ogni numero di righe richiesto, misura
+ * il tempo dei due metodi su problemi simili a quelli di BatchSearchRunnable (ParkingLotsPerRequest colonne per riga)
+ * e quanto costa in più l'assegnamento di greedy.
+ * 
+ * In caso di errore il programma termina con codice di uscita 1.
+ * 
+ * Uso: AssignmentBenchmark [numero righe...] (predefinito: 16 64 256)
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class AssignmentBenchmark {
+
+	private static int Checks = 5000;
+	private static int MaxCheckRows = 6;
+	private static int MaxCheckColumns = 5;
+	private static int MaxCapacity = 3;
+	private static int ParkingLotsPerRequest = 8;
+	private static int WarmupRounds = 3;
+	private static int MeasuredRounds = 10;
+	
+	public static void main(String[] args) {
+		int[] sizes = { 16, 64, 256 };
+		
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+		
+		check();
+		
+		for (int size : sizes) {
+			run(size);
+		}
+	}
+	
+	private static void check() {
+		Random random = new Random(42);
+		
+		for (int i = 0; i < Checks; i++) {
+			int rows = 1 + random.nextInt(MaxCheckRows);
+			int[] capacities = new int[1 + random.nextInt(MaxCheckColumns)];
+			for (int column = 0; column < capacities.length; column++) {
+				capacities[column] = 1 + random.nextInt(MaxCapacity);
+			}
+			
+			// Costi interi, così da avere anche coppie con lo stesso costo.
+			double[][] cost = new double[rows][capacities.length];
+			ArrayList<Assignment.Pair> pairs = new ArrayList<Assignment.Pair>();
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < capacities.length; column++) {
+					cost[row][column] = (random.nextInt(3) == 0) ? Double.POSITIVE_INFINITY : random.nextInt(10);
+					if (cost[row][column] != Double.POSITIVE_INFINITY) pairs.add(new Assignment.Pair(row, column, cost[row][column]));
+				}
+			}
+			
+			double[] best = { -1, 0 };
+			search(cost, capacities.clone(), 0, 0, 0, best);
+			
+			int[] optimal = Assignment.optimal(rows, capacities, new ArrayList<Assignment.Pair>(pairs));
+			double[] result = evaluate(cost, capacities, optimal, "optimal");
+			if (result[0] != best[0] || Math.abs(result[1] - best[1]) > 1e-9) {
+				fail("optimal assegna " + (int) result[0] + " righe con costo " + result[1] + " invece di " + (int) best[0] + " righe con costo " + best[1]);
+			}
+			
+			int[] greedy = Assignment.greedy(rows, capacities, new ArrayList<Assignment.Pair>(pairs));
+			evaluate(cost, capacities, greedy, "greedy");
+			
+			int[] remaining = capacities.clone();
+			for (int row = 0; row < rows; row++) {
+				if (greedy[row] >= 0) remaining[greedy[row]]--;
+			}
+			
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < capacities.length && greedy[row] < 0; column++) {
+					if (cost[row][column] != Double.POSITIVE_INFINITY && remaining[column] > 0) {
+						fail("greedy lascia libera la riga " + row + " anche se la colonna " + column + " non è piena");
+					}
+				}
+			}
+		}
+		
+		System.out.println(Checks + " problemi casuali: optimal coincide con la ricerca esaustiva, greedy è valido e massimale");
+	}
+	
+	/**
+	 * Prova tutti gli assegnamenti delle righe da row in poi, conservando in best il numero di coppie ed il costo del migliore.
+	 */
+	private static void search(double[][] cost, int[] remaining, int row, int assigned, double total, double[] best) {
+		if (row == cost.length) {
+			if (assigned > best[0] || (assigned == best[0] && total < best[1])) {
+				best[0] = assigned;
+				best[1] = total;
+			}
+			
+			return;
+		}
+		
+		search(cost, remaining, row + 1, assigned, total, best);
+		
+		for (int column = 0; column < remaining.length; column++) {
+			if (cost[row][column] == Double.POSITIVE_INFINITY || remaining[column] == 0) continue;
+			
+			remaining[column]--;
+			search(cost, remaining, row + 1, assigned + 1, total + cost[row][column], best);
+			remaining[column]++;
+		}
+	}
+	
+	/**
+	 * Controlla che l'assegnamento usi solo coppie ammesse e rispetti le capacità.
+	 * 
+	 * @return Il numero di righe assegnate ed il costo totale
+	 */
+	private static double[] evaluate(double[][] cost, int[] capacities, int[] assignment, String method) {
+		int[] used = new int[capacities.length];
+		double[] result = { 0, 0 };
+		
+		for (int row = 0; row < assignment.length; row++) {
+			int column = assignment[row];
+			if (column < 0) continue;
+			
+			if (cost[row][column] == Double.POSITIVE_INFINITY) fail(method + " assegna alla riga " + row + " la colonna non ammessa " + column);
+			if (++used[column] > capacities[column]) fail(method + " supera la capacità della colonna " + column);
+			
+			result[0]++;
+			result[1] += cost[row][column];
+		}
+		
+		return result;
+	}
+	
+	private static void run(int rows) {
+		Random random = new Random(rows);
+		
+		// Circa un parcheggio ogni due richieste, con da una a MaxCapacity auto.
+		int[] capacities = new int[Math.max(1, rows / 2)];
+		for (int column = 0; column < capacities.length; column++) {
+			capacities[column] = 1 + random.nextInt(MaxCapacity);
+		}
+		
+		ArrayList<Assignment.Pair> pairs = new ArrayList<Assignment.Pair>();
+		for (int row = 0; row < rows; row++) {
+			for (int i = 0; i < Math.min(ParkingLotsPerRequest, capacities.length); i++) {
+				pairs.add(new Assignment.Pair(row, random.nextInt(capacities.length), random.nextDouble() * 2));
+			}
+		}
+		
+		for (int i = 0; i < WarmupRounds; i++) {
+			Assignment.optimal(rows, capacities, new ArrayList<Assignment.Pair>(pairs));
+			Assignment.greedy(rows, capacities, new ArrayList<Assignment.Pair>(pairs));
+		}
+		
+		long optimal = 0, greedy = 0;
+		int[] optimalAssignment = null, greedyAssignment = null;
+		for (int i = 0; i < MeasuredRounds; i++) {
+			ArrayList<Assignment.Pair> copy = new ArrayList<Assignment.Pair>(pairs);
+			long start = System.nanoTime();
+			optimalAssignment = Assignment.optimal(rows, capacities, copy);
+			optimal += System.nanoTime() - start;
+			
+			copy = new ArrayList<Assignment.Pair>(pairs);
+			start = System.nanoTime();
+			greedyAssignment = Assignment.greedy(rows, capacities, copy);
+			greedy += System.nanoTime() - start;
+		}
+		
+		double[][] cost = new double[rows][capacities.length];
+		for (double[] row : cost) {
+			Arrays.fill(row, Double.POSITIVE_INFINITY);
+		}
+		for (Assignment.Pair pair : pairs) {
+			cost[pair.getRow()][pair.getColumn()] = Math.min(cost[pair.getRow()][pair.getColumn()], pair.getCost());
+		}
+		
+		double[] optimalResult = evaluate(cost, capacities, optimalAssignment, "optimal");
+		double[] greedyResult = evaluate(cost, capacities, greedyAssignment, "greedy");
+		
+		System.out.println(rows + " righe, " + capacities.length + " colonne, " + pairs.size() + " coppie:");
+		System.out.println("\toptimal: " + (optimal / MeasuredRounds / 1000) + " µs, " + (int) optimalResult[0] + " righe assegnate, costo " + Math.round(optimalResult[1] * 1000) / 1000.0);
+		System.out.println("\tgreedy: " + (greedy / MeasuredRounds / 1000) + " µs, " + (int) greedyResult[0] + " righe assegnate, costo " + Math.round(greedyResult[1] * 1000) / 1000.0);
+	}
+	
+	private static void fail(String message) {
+		System.out.println("ERRORE: " + message + ".");
+		System.exit(1);
+	}
+
+}
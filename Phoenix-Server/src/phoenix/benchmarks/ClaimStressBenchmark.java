@@ -0,0 +1,159 @@
+package phoenix.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import phoenix.base.Car;
+import phoenix.base.ParkingLot;
+import phoenix.db.MemoryStorageEngine;
+
+/**
+ * Controlla che nessuna auto possa essere prelevata due volte quando più thread prelevano e riparcheggiano contemporaneamente
+ * le auto degli stessi parcheggi.
+ * 
+ * Ogni thread, ripetutamente, preleva un'auto da un parcheggio casuale, con pollCar oppure con remove (passando una copia dell'auto,
+ * come fa il Server con le auto ricevute dal Client), la tiene per qualche operazione e la riparcheggia in un parcheggio casuale.
+ * Un'auto prelevata mentre è già in mano ad un thread è un errore; alla fine viene controllato che ogni auto si trovi
+ * in un solo parcheggio e che i contatori per tipo corrispondano alle auto presenti.
+ * 
+ * In caso di errore il programma termina con codice di uscita 1.
+ * 
+ * Uso: ClaimStressBenchmark [numero thread] [operazioni per thread] (predefinito: 16 200000)
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class ClaimStressBenchmark {
+
+	private static int ParkingLots = 4;
+	private static int CarsPerLot = 16;
+	private static int MaxHeldCars = 4;
+	
+	public static void main(String[] args) throws InterruptedException {
+		int threadsCount = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+		int operations = (args.length > 1) ? Integer.parseInt(args[1]) : 200000;
+		
+		ArrayList<ParkingLot> parkingLots = new ArrayList<ParkingLot>(MemoryStorageEngine.random(ParkingLots, CarsPerLot, 42).loadFleet().values());
+		ArrayList<Car> cars = new ArrayList<Car>();
+		ArrayList<Integer> typeIds = new ArrayList<Integer>();
+		for (ParkingLot parkingLot : parkingLots) {
+			for (Car car : parkingLot) {
+				cars.add(car);
+				if (!typeIds.contains(car.getType().getId())) typeIds.add(car.getType().getId());
+			}
+		}
+		
+		Set<Car> held = ConcurrentHashMap.newKeySet();
+		AtomicReference<String> failure = new AtomicReference<String>();
+		AtomicLong claims = new AtomicLong();
+		
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < threadsCount; i++) {
+			Random random = new Random(i);
+			
+			threads.add(new Thread(() -> {
+				ArrayList<Car> mine = new ArrayList<Car>();
+				
+				for (int operation = 0; operation < operations && failure.get() == null; operation++) {
+					ParkingLot parkingLot = parkingLots.get(random.nextInt(parkingLots.size()));
+					Car car;
+					
+					if (random.nextBoolean()) {
+						car = parkingLot.pollCar(typeIds.get(random.nextInt(typeIds.size())));
+					}
+					else {
+						Car parked = cars.get(random.nextInt(cars.size()));
+						Car copy = new Car(parked.getId(), parked.getName(), parked.getColor(), parked.getPlate(), parked.getType());
+						car = parkingLot.remove(copy) ? copy : null;
+					}
+					
+					if (car != null) {
+						claims.incrementAndGet();
+						
+						if (!held.add(car)) {
+							failure.compareAndSet(null, "l'auto " + car.getPlate() + " è stata prelevata mentre era già in uso");
+						}
+						
+						mine.add(car);
+					}
+					
+					if (mine.size() > MaxHeldCars || (!mine.isEmpty() && random.nextInt(4) == 0)) {
+						Car parked = mine.remove(random.nextInt(mine.size()));
+						
+						// L'auto deve risultare libera prima di essere riparcheggiata, perché da quel momento un altro thread può prelevarla.
+						held.remove(parked);
+						parkingLots.get(random.nextInt(parkingLots.size())).add(parked);
+					}
+				}
+				
+				for (Car parked : mine) {
+					held.remove(parked);
+					parkingLots.get(random.nextInt(parkingLots.size())).add(parked);
+				}
+			}, "Phoenix-Stress-" + i));
+		}
+		
+		long start = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long elapsed = System.nanoTime() - start;
+		
+		if (failure.get() == null) {
+			failure.set(check(parkingLots, cars));
+		}
+		
+		if (failure.get() != null) {
+			System.out.println("ERRORE: " + failure.get() + ".");
+			System.exit(1);
+		}
+		
+		System.out.println(threadsCount + " thread, " + parkingLots.size() + " parcheggi, " + cars.size() + " auto:");
+		System.out.println("\tprelievi: " + claims.get() + " in " + (elapsed / 1000000) + " ms");
+		System.out.println("\tnessuna auto prelevata due volte, contatori per tipo coerenti");
+	}
+	
+	/**
+	 * Controlla che ogni auto si trovi in un solo parcheggio e che i contatori per tipo di ogni parcheggio corrispondano alle sue auto.
+	 * 
+	 * @return La descrizione dell'errore, oppure null se il controllo è superato
+	 */
+	private static String check(Collection<ParkingLot> parkingLots, Collection<Car> cars) {
+		HashMap<Car, ParkingLot> locations = new HashMap<Car, ParkingLot>();
+		
+		for (ParkingLot parkingLot : parkingLots) {
+			HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+			
+			for (Car car : parkingLot) {
+				if (locations.put(car, parkingLot) != null) return "l'auto " + car.getPlate() + " si trova in più di un parcheggio";
+				if (car.isClaimed()) return "l'auto " + car.getPlate() + " è parcheggiata ma risulta prelevata";
+				
+				counts.merge(car.getType().getId(), 1, Integer::sum);
+			}
+			
+			if (!counts.equals(parkingLot.getAvailableCounts())) return "i contatori del parcheggio " + parkingLot.getId() + " sono " + parkingLot.getAvailableCounts() + " invece di " + counts;
+			
+			for (Map.Entry<Integer, Integer> count : counts.entrySet()) {
+				Car car = parkingLot.pollCar(count.getKey());
+				if (car == null) return "il parcheggio " + parkingLot.getId() + " non restituisce le auto del tipo " + count.getKey();
+				
+				parkingLot.add(car);
+			}
+		}
+		
+		if (locations.size() != cars.size()) return (cars.size() - locations.size()) + " auto non si trovano in nessun parcheggio";
+		
+		return null;
+	}
+
+}
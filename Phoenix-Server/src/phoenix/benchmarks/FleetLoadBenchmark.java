@@ -0,0 +1,110 @@
+package phoenix.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import phoenix.db.DbLayer;
+import phoenix.db.FleetLoader;
+import phoenix.db.Mutation;
+
+/**
+ * Confronta il caricamento dei parcheggi con un'unica query (FleetLoader.loadParkingLots) ed il caricamento con una query
+ * per ogni parcheggio (FleetLoader.loadParkingLotsPerLot).
+ * 
+ * Per ogni dimensione richiesta, crea un Database temporaneo con il numero di parcheggi indicato e tre auto per parcheggio,
+ * quindi misura il tempo medio di ciascun caricamento.
+ * 
+ * Uso: FleetLoadBenchmark [numero parcheggi...] (predefinito: 1000 10000)
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class FleetLoadBenchmark {
+
+	private static int CarsPerLot = 3;
+	private static int WarmupRounds = 3;
+	private static int MeasuredRounds = 10;
+	
+	public static void main(String[] args) throws Exception {
+		int[] sizes = { 1000, 10000 };
+		
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+		
+		for (int size : sizes) {
+			run(size);
+		}
+	}
+	
+	private static void run(int lots) throws ClassNotFoundException, SQLException, IOException {
+		File database = File.createTempFile("phoenix-benchmark", ".db");
+		database.deleteOnExit();
+		
+		DbLayer dbLayer = new DbLayer(database.getAbsolutePath(), 0);
+		
+		try {
+			dbLayer.migrate();
+			populate(dbLayer, lots);
+			
+			FleetLoader loader = new FleetLoader(dbLayer);
+			
+			for (int i = 0; i < WarmupRounds; i++) {
+				loader.loadParkingLots();
+				loader.loadParkingLotsPerLot();
+			}
+			
+			long joined = 0, perLot = 0;
+			for (int i = 0; i < MeasuredRounds; i++) {
+				long start = System.nanoTime();
+				loader.loadParkingLots();
+				joined += System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				loader.loadParkingLotsPerLot();
+				perLot += System.nanoTime() - start;
+			}
+			
+			System.out.println(lots + " parcheggi, " + (lots * CarsPerLot) + " auto:");
+			System.out.println("\tquery unica: " + (joined / MeasuredRounds / 1000) + " µs");
+			System.out.println("\tuna query per parcheggio: " + (perLot / MeasuredRounds / 1000) + " µs");
+		} finally {
+			dbLayer.close();
+			database.delete();
+		}
+	}
+	
+	/**
+	 * Sostituisce parcheggi ed auto del Database con parcheggi casuali nell'area di Genova.
+	 */
+	private static void populate(DbLayer dbLayer, int lots) throws SQLException {
+		Random random = new Random(42);
+		ArrayList<Mutation> mutations = new ArrayList<Mutation>();
+		
+		mutations.add(new Mutation("DELETE FROM \"Car\""));
+		mutations.add(new Mutation("DELETE FROM \"ParkingLot\""));
+		
+		for (int lot = 1; lot <= lots; lot++) {
+			double latitude = 44.389825 + random.nextDouble() * (44.415457 - 44.389825);
+			double longitude = 8.890324 + random.nextDouble() * (9.010487 - 8.890324);
+			
+			mutations.add(new Mutation("INSERT INTO \"ParkingLot\" (id, name, latitude, longitude, altitude, address, lots) VALUES (?, ?, ?, ?, 0, ?, ?)",
+					lot, "Park " + lot, latitude, longitude, "Indirizzo " + lot, CarsPerLot * 2));
+			
+			for (int car = 0; car < CarsPerLot; car++) {
+				int id = (lot - 1) * CarsPerLot + car + 1;
+				mutations.add(new Mutation("INSERT INTO \"Car\" (id, name, color, plate, currentParkingLot, type) VALUES (?, ?, 'Bianco', ?, ?, ?)",
+						id, "Auto " + id, String.format("ZZ%05d", id), lot, 1 + random.nextInt(9)));
+			}
+		}
+		
+		dbLayer.executeTransaction(mutations);
+	}
+
+}
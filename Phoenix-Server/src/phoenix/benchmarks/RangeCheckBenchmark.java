@@ -0,0 +1,186 @@
+package phoenix.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import phoenix.base.GPSPosition;
+import phoenix.base.ParkingLot;
+import phoenix.base.User;
+import phoenix.db.MemoryStorageEngine;
+
+/**
+ * Confronta il controllo della distanza con getDistance (metodo di Vincenty) con il controllo a più passi di GPSPosition.isWithin.
+ * 
+ * Per ogni raggio richiesto, controlla tutte le coppie tra parcheggi casuali nell'area di Genova e posizioni casuali nella stessa area:
+ * verifica che i due metodi diano sempre lo stesso risultato, conta quante coppie vengono decise da ciascun passo
+ * (e quindi quante chiamate al metodo di Vincenty vengono evitate) e misura il tempo di entrambi i metodi.
+ * 
+ * Prima dei raggi, sulle stesse coppie, controlla che i livelli di precisione di GPSPosition.distanceTo restino entro l'errore
+ * relativo dichiarato (SphericalError e BoundedError) rispetto a ExactAccuracy e misura il tempo di ciascun livello.
+ * In caso di errore il programma termina con codice di uscita 1.
+ * 
+ * Uso: RangeCheckBenchmark [raggio in km...] (predefinito: 0.5 1 2 5)
+ * 
+ * @author Alessio Moiso
+ * @version 1.1
+ */
+public class RangeCheckBenchmark {
+
+	private static int ParkingLots = 1000;
+	private static int Positions = 200;
+	private static int WarmupRounds = 1;
+	private static int MeasuredRounds = 3;
+	
+	public static void main(String[] args) {
+		double[] ranges = { 0.5, 1, 2, 5 };
+		
+		if (args.length > 0) {
+			ranges = new double[args.length];
+			for (int i = 0; i < args.length; i++) {
+				ranges[i] = Double.parseDouble(args[i]);
+			}
+		}
+		
+		ArrayList<GPSPosition> parkingLots = new ArrayList<GPSPosition>();
+		for (ParkingLot parkingLot : MemoryStorageEngine.random(ParkingLots, 0, 42).loadFleet().values()) {
+			parkingLots.add(parkingLot.getPosition());
+		}
+		
+		Random random = new Random(7);
+		ArrayList<GPSPosition> positions = new ArrayList<GPSPosition>();
+		for (int i = 0; i < Positions; i++) {
+			positions.add(new GPSPosition(User.bottomRight.getLatitude() + random.nextDouble() * (User.topLeft.getLatitude() - User.bottomRight.getLatitude()),
+					User.topLeft.getLongitude() + random.nextDouble() * (User.bottomRight.getLongitude() - User.topLeft.getLongitude())));
+		}
+		
+		accuracy(parkingLots, positions);
+		
+		for (double range : ranges) {
+			run(parkingLots, positions, range);
+		}
+	}
+	
+	private static void accuracy(ArrayList<GPSPosition> parkingLots, ArrayList<GPSPosition> positions) {
+		double sphericalError = 0, boundedError = 0;
+		
+		for (GPSPosition parkingLot : parkingLots) {
+			for (GPSPosition position : positions) {
+				double exact = parkingLot.distanceTo(position, GPSPosition.ExactAccuracy);
+				if (exact == 0) continue;
+				
+				sphericalError = Math.max(sphericalError, Math.abs(parkingLot.distanceTo(position, GPSPosition.SphericalAccuracy) - exact) / exact);
+				boundedError = Math.max(boundedError, Math.abs(parkingLot.distanceTo(position, GPSPosition.BoundedAccuracy) - exact) / exact);
+			}
+		}
+		
+		if (sphericalError >= GPSPosition.SphericalError) {
+			System.out.println("ERRORE: l'errore relativo di SphericalAccuracy è " + sphericalError + ", non inferiore a " + GPSPosition.SphericalError + ".");
+			System.exit(1);
+		}
+		
+		if (boundedError >= GPSPosition.BoundedError) {
+			System.out.println("ERRORE: l'errore relativo di BoundedAccuracy è " + boundedError + ", non inferiore a " + GPSPosition.BoundedError + ".");
+			System.exit(1);
+		}
+		
+		int[] accuracies = { GPSPosition.ExactAccuracy, GPSPosition.BoundedAccuracy, GPSPosition.SphericalAccuracy };
+		long[] elapsed = new long[accuracies.length];
+		
+		for (int i = 0; i < WarmupRounds; i++) {
+			for (int accuracy : accuracies) {
+				distances(parkingLots, positions, accuracy);
+			}
+		}
+		
+		for (int i = 0; i < MeasuredRounds; i++) {
+			for (int j = 0; j < accuracies.length; j++) {
+				long start = System.nanoTime();
+				distances(parkingLots, positions, accuracies[j]);
+				elapsed[j] += System.nanoTime() - start;
+			}
+		}
+		
+		System.out.println("Precisione di distanceTo, " + ((long) parkingLots.size() * positions.size()) + " distanze:");
+		System.out.println("	ExactAccuracy: " + (elapsed[0] / MeasuredRounds / 1000) + " µs");
+		System.out.println("	BoundedAccuracy: " + (elapsed[1] / MeasuredRounds / 1000) + " µs (" + Math.round(elapsed[0] * 10.0 / elapsed[1]) / 10.0 + "x), errore massimo " + String.format("%.2e", boundedError) + " (ammesso " + GPSPosition.BoundedError + ")");
+		System.out.println("	SphericalAccuracy: " + (elapsed[2] / MeasuredRounds / 1000) + " µs (" + Math.round(elapsed[0] * 10.0 / elapsed[2]) / 10.0 + "x), errore massimo " + String.format("%.2e", sphericalError) + " (ammesso " + GPSPosition.SphericalError + ")");
+	}
+	
+	private static double distances(ArrayList<GPSPosition> parkingLots, ArrayList<GPSPosition> positions, int accuracy) {
+		double total = 0;
+		
+		for (GPSPosition parkingLot : parkingLots) {
+			for (GPSPosition position : positions) {
+				total += parkingLot.distanceTo(position, accuracy);
+			}
+		}
+		
+		return total;
+	}
+	
+	private static void run(ArrayList<GPSPosition> parkingLots, ArrayList<GPSPosition> positions, double range) {
+		long[] tiers = new long[4];
+		
+		for (GPSPosition parkingLot : parkingLots) {
+			for (GPSPosition position : positions) {
+				if (parkingLot.isWithin(position, range) != (parkingLot.getDistance(position) < range)) {
+					System.out.println("ERRORE: isWithin e getDistance danno risultati diversi per " + parkingLot + " e " + position);
+					return;
+				}
+				
+				tiers[parkingLot.estimateRange(position, range)]++;
+			}
+		}
+		
+		for (int i = 0; i < WarmupRounds; i++) {
+			vincenty(parkingLots, positions, range);
+			tiered(parkingLots, positions, range);
+		}
+		
+		long vincenty = 0, tiered = 0;
+		for (int i = 0; i < MeasuredRounds; i++) {
+			long start = System.nanoTime();
+			vincenty(parkingLots, positions, range);
+			vincenty += System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			tiered(parkingLots, positions, range);
+			tiered += System.nanoTime() - start;
+		}
+		
+		long checks = (long) parkingLots.size() * positions.size();
+		long avoided = checks - tiers[GPSPosition.Borderline];
+		
+		System.out.println("Raggio " + range + " km, " + checks + " controlli:");
+		System.out.println("\tscartati dal rettangolo: " + tiers[GPSPosition.OutsideBoundingBox]);
+		System.out.println("\tdecisi dalla stima sulla sfera: " + (tiers[GPSPosition.OutsideEstimate] + tiers[GPSPosition.InsideEstimate]) + " (" + tiers[GPSPosition.InsideEstimate] + " nel raggio)");
+		System.out.println("\tchiamate a Vincenty evitate: " + avoided + " (" + (avoided * 100 / checks) + "%)");
+		System.out.println("\tgetDistance: " + (vincenty / MeasuredRounds / 1000) + " µs");
+		System.out.println("\tisWithin: " + (tiered / MeasuredRounds / 1000) + " µs");
+	}
+	
+	private static int vincenty(ArrayList<GPSPosition> parkingLots, ArrayList<GPSPosition> positions, double range) {
+		int inRange = 0;
+		
+		for (GPSPosition parkingLot : parkingLots) {
+			for (GPSPosition position : positions) {
+				if (parkingLot.getDistance(position) < range) inRange++;
+			}
+		}
+		
+		return inRange;
+	}
+	
+	private static int tiered(ArrayList<GPSPosition> parkingLots, ArrayList<GPSPosition> positions, double range) {
+		int inRange = 0;
+		
+		for (GPSPosition parkingLot : parkingLots) {
+			for (GPSPosition position : positions) {
+				if (parkingLot.isWithin(position, range)) inRange++;
+			}
+		}
+		
+		return inRange;
+	}
+
+}
@@ -0,0 +1,191 @@
+package phoenix.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import phoenix.base.CarRequest;
+import phoenix.base.GPSPosition;
+import phoenix.base.ParkingLot;
+import phoenix.base.SessionToken;
+import phoenix.base.User;
+import phoenix.db.MemoryStorageEngine;
+import phoenix.fleet.FleetRegistry;
+import phoenix.fleet.WaitingRequests;
+
+/**
+ * Confronta la ricerca dei parcheggi entro un raggio tramite la griglia del registro (FleetRegistry.parkingLotsInRange)
+ * con il controllo della distanza di tutti i parcheggi.
+ * 
+ * Per ogni dimensione richiesta, genera parcheggi casuali nell'area di Genova ed esegue le stesse ricerche, da posizioni casuali
+ * e con raggio di 500 metri, con entrambi i metodi; verifica inoltre che i parcheggi trovati coincidano.
+ * Misura anche la ricerca del solo parcheggio più vicino (FleetRegistry.nearestParkingLots), che si ferma alle celle necessarie.
+ * 
+ * Infine, dalle stesse posizioni, mette in attesa (WaitingRequests) delle richieste con raggio di 500 metri e con raggio di WideRange km,
+ * che non vengono aggiunte alla griglia: misura il tempo per metterle in attesa ed annullarle e per soddisfarle tramite claim,
+ * e verifica che ogni richiesta con raggio esteso possa essere soddisfatta da qualunque parcheggio.
+ * 
+ * Uso: RangeSearchBenchmark [numero parcheggi...] (predefinito: 1000 10000)
+ * 
+ * @author Alessio Moiso
+ * @version 1.2
+ */
+public class RangeSearchBenchmark {
+
+	private static double SearchRange = 0.5;
+	private static double WideRange = 1000;
+	private static int Searches = 200;
+	private static int WarmupRounds = 1;
+	private static int MeasuredRounds = 3;
+	
+	public static void main(String[] args) {
+		int[] sizes = { 1000, 10000 };
+		
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+		
+		for (int size : sizes) {
+			run(size);
+		}
+	}
+	
+	private static void run(int lots) {
+		ConcurrentHashMap<Integer, ParkingLot> parkingLots = MemoryStorageEngine.random(lots, 0, 42).loadFleet();
+		FleetRegistry fleet = new FleetRegistry(parkingLots);
+		
+		Random random = new Random(7);
+		ArrayList<GPSPosition> positions = new ArrayList<GPSPosition>();
+		for (int i = 0; i < Searches; i++) {
+			positions.add(new GPSPosition(User.bottomRight.getLatitude() + random.nextDouble() * (User.topLeft.getLatitude() - User.bottomRight.getLatitude()),
+					User.topLeft.getLongitude() + random.nextDouble() * (User.bottomRight.getLongitude() - User.topLeft.getLongitude())));
+		}
+		
+		for (GPSPosition position : positions) {
+			if (!new HashSet<ParkingLot>(scan(parkingLots, position)).equals(new HashSet<ParkingLot>(fleet.parkingLotsInRange(position, SearchRange)))) {
+				System.out.println("ERRORE: la griglia restituisce parcheggi diversi per la posizione " + position);
+				return;
+			}
+			
+			List<ParkingLot> nearest = fleet.nearestParkingLots(position, SearchRange, 1, null);
+			if (!nearest.equals(closest(scan(parkingLots, position), position))) {
+				System.out.println("ERRORE: la griglia restituisce un parcheggio più vicino diverso per la posizione " + position);
+				return;
+			}
+		}
+		
+		for (int i = 0; i < WarmupRounds; i++) {
+			for (GPSPosition position : positions) {
+				scan(parkingLots, position);
+				fleet.parkingLotsInRange(position, SearchRange);
+				fleet.nearestParkingLots(position, SearchRange, 1, null);
+			}
+		}
+		
+		long scan = 0, grid = 0, nearest = 0;
+		for (int i = 0; i < MeasuredRounds; i++) {
+			long start = System.nanoTime();
+			for (GPSPosition position : positions) {
+				scan(parkingLots, position);
+			}
+			scan += System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (GPSPosition position : positions) {
+				fleet.parkingLotsInRange(position, SearchRange);
+			}
+			grid += System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			for (GPSPosition position : positions) {
+				fleet.nearestParkingLots(position, SearchRange, 1, null);
+			}
+			nearest += System.nanoTime() - start;
+		}
+		
+		System.out.println(lots + " parcheggi (" + fleet.toString().replace('\n', ',') + "):");
+		System.out.println("\ttutti i parcheggi: " + (scan / MeasuredRounds / Searches / 1000) + " µs per ricerca");
+		System.out.println("\tgriglia: " + (grid / MeasuredRounds / Searches / 1000) + " µs per ricerca");
+		System.out.println("\tparcheggio più vicino: " + (nearest / MeasuredRounds / Searches / 1000) + " µs per ricerca");
+		
+		runWaiting(new ArrayList<ParkingLot>(parkingLots.values()), positions, SearchRange);
+		runWaiting(new ArrayList<ParkingLot>(parkingLots.values()), positions, WideRange);
+	}
+	
+	private static void runWaiting(List<ParkingLot> parkingLots, List<GPSPosition> positions, double range) {
+		ArrayList<CarRequest> requests = new ArrayList<CarRequest>();
+		for (int i = 0; i < positions.size(); i++) {
+			requests.add(new CarRequest(new SessionToken("utente" + i), null, 1, positions.get(i), range));
+		}
+		
+		long replace = 0, claim = 0, claimed = 0;
+		for (int i = 0; i < WarmupRounds + MeasuredRounds; i++) {
+			WaitingRequests waiting = new WaitingRequests();
+			
+			long start = System.nanoTime();
+			for (CarRequest request : requests) {
+				waiting.put(request);
+			}
+			for (CarRequest request : requests) {
+				waiting.remove(request.getSessionToken().getToken());
+			}
+			long elapsed = System.nanoTime() - start;
+			
+			for (CarRequest request : requests) {
+				waiting.put(request);
+			}
+			
+			long claimStart = System.nanoTime();
+			long roundClaimed = 0;
+			for (ParkingLot parkingLot : parkingLots) {
+				if (waiting.claim(parkingLot, 1) != null) roundClaimed++;
+			}
+			long claimElapsed = System.nanoTime() - claimStart;
+			
+			if (range >= WideRange && roundClaimed != Math.min(requests.size(), parkingLots.size())) {
+				System.out.println("ERRORE: " + roundClaimed + " richieste con raggio di " + range + " km soddisfatte invece di " + Math.min(requests.size(), parkingLots.size()));
+				return;
+			}
+			
+			if (i >= WarmupRounds) {
+				replace += elapsed;
+				claim += claimElapsed;
+				claimed = roundClaimed;
+			}
+		}
+		
+		System.out.println("\trichieste in attesa con raggio di " + range + " km: " + (replace / MeasuredRounds / requests.size() / 1000) + " µs per put e remove, "
+				+ (claim / MeasuredRounds / parkingLots.size() / 1000) + " µs per claim (" + claimed + " soddisfatte)");
+	}
+	
+	private static List<ParkingLot> scan(ConcurrentHashMap<Integer, ParkingLot> parkingLots, GPSPosition position) {
+		ArrayList<ParkingLot> parkingLotsNearby = new ArrayList<ParkingLot>();
+		
+		for (ParkingLot parkingLot : parkingLots.values()) {
+			if (parkingLot.isInRange(position, SearchRange)) {
+				parkingLotsNearby.add(parkingLot);
+			}
+		}
+		
+		return parkingLotsNearby;
+	}
+	
+	private static List<ParkingLot> closest(List<ParkingLot> parkingLots, GPSPosition position) {
+		ParkingLot closest = null;
+		
+		for (ParkingLot parkingLot : parkingLots) {
+			if (closest == null || parkingLot.getPosition().getDistance(position) < closest.getPosition().getDistance(position)) {
+				closest = parkingLot;
+			}
+		}
+		
+		return (closest == null) ? new ArrayList<ParkingLot>() : Collections.singletonList(closest);
+	}
+
+}
@@ -0,0 +1,89 @@
+package phoenix.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import phoenix.db.FleetSnapshot;
+import phoenix.db.MappedFleetSnapshot;
+import phoenix.db.MemoryStorageEngine;
+import phoenix.db.StorageException;
+import phoenix.exceptions.UserAlreadyRegisteredException;
+
+/**
+ * Misura il tempo necessario a ripartire da uno snapshot mappato in memoria (vedi MappedFleetSnapshot).
+ * 
+ * Per ogni dimensione richiesta, genera una flotta casuale con tre auto per parcheggio e dieci utenti per parcheggio,
+ * la salva in uno snapshot temporaneo e misura: la mappatura del file, la creazione dello stato in memoria con i parcheggi
+ * pronti per il registro ed il primo login di un utente (letto dallo snapshot con una ricerca binaria).
+ * 
+ * Uso: SnapshotStartupBenchmark [numero parcheggi...] (predefinito: 10000 100000)
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class SnapshotStartupBenchmark {
+
+	private static int CarsPerLot = 3;
+	private static int UsersPerLot = 10;
+	private static int WarmupRounds = 3;
+	private static int MeasuredRounds = 10;
+	
+	public static void main(String[] args) throws Exception {
+		int[] sizes = { 10000, 100000 };
+		
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+		
+		for (int size : sizes) {
+			run(size);
+		}
+	}
+	
+	private static void run(int lots) throws IOException, StorageException, UserAlreadyRegisteredException {
+		File file = File.createTempFile("phoenix-benchmark", ".snapshot");
+		file.deleteOnExit();
+		
+		try {
+			MemoryStorageEngine source = MemoryStorageEngine.random(lots, CarsPerLot, 42);
+			for (int i = 0; i < lots * UsersPerLot; i++) {
+				source.createUser("utente" + i, "utente" + i + "@phoenix.it", "Nome", "Cognome " + i, "hash" + i, "salt" + i);
+			}
+			
+			FleetSnapshot.capture(source, 1).write(file);
+			
+			String username = "utente" + (lots * UsersPerLot / 2);
+			
+			for (int i = 0; i < WarmupRounds; i++) {
+				new MappedFleetSnapshot(file).toStorage().loadFleet();
+			}
+			
+			long map = 0, storage = 0, login = 0;
+			for (int i = 0; i < MeasuredRounds; i++) {
+				long start = System.nanoTime();
+				MappedFleetSnapshot snapshot = new MappedFleetSnapshot(file);
+				map += System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				MemoryStorageEngine restored = snapshot.toStorage();
+				restored.loadFleet();
+				storage += System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				restored.findUser(username);
+				login += System.nanoTime() - start;
+			}
+			
+			System.out.println(lots + " parcheggi, " + (lots * CarsPerLot) + " auto, " + (lots * UsersPerLot) + " utenti (" + (file.length() / 1024) + " KB):");
+			System.out.println("\tmappatura: " + (map / MeasuredRounds / 1000) + " µs");
+			System.out.println("\tparcheggi ed auto: " + (storage / MeasuredRounds / 1000) + " µs");
+			System.out.println("\tprimo login: " + (login / MeasuredRounds / 1000) + " µs");
+		} finally {
+			file.delete();
+		}
+	}
+
+}
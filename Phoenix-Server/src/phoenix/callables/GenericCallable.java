@@ -2,12 +2,12 @@ package phoenix.callables;
 
 import java.util.concurrent.Callable;
 
-import phoenix.db.DbLayer;
+import phoenix.db.StorageEngine;
 
 /**
  * Rappresenta un generico Callable per Phoenix.
  * 
- * Contiene un collegamento al Database e le credenziali di un utente, che sono richieste sia da registrazione che da login.
+ * Contiene un collegamento al sistema di memorizzazione e le credenziali di un utente, che sono richieste sia da registrazione che da login.
  * 
  * @author Alessio Moiso
  * @version 1.0
@@ -15,12 +15,12 @@ import phoenix.db.DbLayer;
  */
 public abstract class GenericCallable<T> implements Callable<T> {
 	
-	final DbLayer dbLayer;
+	final StorageEngine storage;
 	final String username;
 	final String password;
 	
-	public GenericCallable(DbLayer layer, String username, String password) {
-		this.dbLayer = layer;
+	public GenericCallable(StorageEngine storage, String username, String password) {
+		this.storage = storage;
 		this.username = username;
 		this.password = password;
 	}
@@ -1,20 +1,18 @@
 package phoenix.callables;
 
-import java.sql.SQLException;
-
-import phoenix.db.DbLayer;
-import phoenix.exceptions.UserAlreadyRegisteredException;
+import phoenix.db.StorageEngine;
+import phoenix.db.StorageException;
 import phoenix.tools.PasswordHash;
 import phoenix.tools.RandomString;
 
 /**
  * Implementa la procedura di registrazione di un utente.
  * 
- * Genera l'hash della password, quindi aggiunge l'utente al Database.
+ * Genera l'hash della password, quindi aggiunge l'utente tramite lo StorageEngine.
  * E' in grado di gestire eventuali errori sui vincoli di chiave: viene lanciata UserAlreadyRegisteredException.
  * 
  * @author Alessio Moiso
- * @version 1.2
+ * @version 1.3
  */
 public class RegisterCallable extends GenericCallable<Void> {
 	
@@ -22,8 +20,8 @@ public class RegisterCallable extends GenericCallable<Void> {
 	private String name;
 	private String surname;
 	
-	public RegisterCallable(DbLayer layer, String username, String email, String password, String name, String surname) {
-		super(layer, username, password);
+	public RegisterCallable(StorageEngine storage, String username, String email, String password, String name, String surname) {
+		super(storage, username, password);
 		this.name = name;
 		this.surname = surname;
 		this.email = email;
@@ -37,15 +35,11 @@ public class RegisterCallable extends GenericCallable<Void> {
 		PasswordHash hash = new PasswordHash(this.password, salt);
 		
 		try {
-			this.dbLayer.executeUpdate("INSERT INTO \"User\" (username, name, surname, email, password, salt) VALUES (?, ?, ?, ?, ?, ?)", this.username, this.name, this.surname, this.email, hash.hash(), salt);
+			this.storage.createUser(this.username, this.email, this.name, this.surname, hash.hash(), salt);
 		}
-		catch (SQLException e) {
-			if (e.getErrorCode() == 19) {
-				throw new UserAlreadyRegisteredException();
-			}
-			else {
-				System.out.println("\n\nERRORE: non è stato possibile registrare l'utente.");
-			}
+		catch (StorageException e) {
+			e.printStackTrace();
+			System.out.println("\n\nERRORE: non è stato possibile registrare l'utente.");
 		}
 		
 		return null;
@@ -5,12 +5,29 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Contiene tutte le funzionalità legate al Database in SQLite su cui si appoggia l'applicativo.
  * 
+ * @discussion Gli statement vengono preparati una sola volta e conservati in una StatementCache. Le query vengono eseguite
+ * con query (o queryList), che scorre le righe una alla volta e chiude il cursore al termine, restituendo lo statement alla cache.
+ * 
+ * Se creato con un numero di lettori maggiore di zero, il DbLayer lavora in modalità pool: il Database viene aperto in modalità WAL,
+ * le query vengono eseguite su un insieme di connessioni in sola lettura che lavorano in parallelo, mentre tutti gli aggiornamenti
+ * passano da un'unica connessione di scrittura.
+ * 
+ * Lo schema del Database viene creato ed aggiornato con migrate (vedi Schema).
+ * 
  * @author Alessio Moiso
- * @version 1.0
+ * @version 1.5
  */
 public class DbLayer {
 
@@ -23,35 +40,344 @@ public class DbLayer {
 	 */
 	private static String DatabasePath =  "/tmp/Phoenix.db";
 	
-	private Connection connection;
+	/**
+	 * Numero massimo di statement conservati nella cache di ogni connessione.
+	 */
+	private static int StatementCacheSize = 32;
+	
+	/**
+	 * Tempo massimo (in millisecondi) di attesa per una connessione in lettura libera, prima di aprirne una aggiuntiva.
+	 */
+	private static long ReaderTimeout = 50;
+	
+	/**
+	 * Tempo massimo (in millisecondi) che SQLite attende quando il Database è bloccato da un'altra connessione.
+	 */
+	private static int BusyTimeout = 5000;
+	
+	/**
+	 * Numero di righe lette alla volta dalle query eseguite con query, se non diversamente specificato.
+	 */
+	private static int FetchSize = 128;
+	
+	private final String path;
+	
+	/**
+	 * La connessione di scrittura, con la relativa cache di statement.
+	 * 
+	 * @discussion In modalità singola (nessun lettore), questa connessione viene usata anche per le query.
+	 */
+	private StatementCache writer;
+	private ReentrantLock writeLock;
+	
+	/**
+	 * Le connessioni in lettura attualmente libere.
+	 */
+	private ArrayBlockingQueue<StatementCache> readers;
+	private ArrayList<StatementCache> allReaders;
+	
+	private AtomicLong overflowReaders = new AtomicLong();
 	
 	public DbLayer() throws ClassNotFoundException, SQLException {
+		this(0);
+	}
+	
+	/**
+	 * Crea un DbLayer con il numero di connessioni in lettura specificato.
+	 * 
+	 * @param readersNumber: Il numero di connessioni in lettura (0 per usare una sola connessione condivisa)
+	 * @throws ClassNotFoundException
+	 * @throws SQLException
+	 */
+	public DbLayer(int readersNumber) throws ClassNotFoundException, SQLException {
+		this(DatabasePath, readersNumber);
+	}
+	
+	public DbLayer(String path, int readersNumber) throws ClassNotFoundException, SQLException {
 		Class.forName("org.sqlite.JDBC");
-		this.connection = DriverManager.getConnection("jdbc:sqlite:" + DatabasePath);
+		this.path = path;
+		
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+		if (readersNumber > 0) {
+			pragma(connection, "PRAGMA journal_mode = WAL");
+			pragma(connection, "PRAGMA busy_timeout = " + BusyTimeout);
+		}
+		
+		this.writer = new StatementCache(connection, StatementCacheSize);
+		this.writeLock = new ReentrantLock();
+		
+		this.readers = new ArrayBlockingQueue<StatementCache>(Math.max(readersNumber, 1));
+		this.allReaders = new ArrayList<StatementCache>();
+		for (int i = 0; i < readersNumber; i++) {
+			StatementCache reader = new StatementCache(openReader(), StatementCacheSize);
+			this.allReaders.add(reader);
+			this.readers.add(reader);
+		}
+	}
+	
+	/**
+	 * Esegue una query e passa ogni riga ottenuta all'handler specificato.
+	 * 
+	 * @discussion Le righe vengono lette man mano, FetchSize alla volta: il cursore viene chiuso e lo statement restituito alla cache
+	 * al termine della lettura, anche in caso di errore.
+	 * 
+	 * @param query: La query da eseguire
+	 * @param handler: L'handler che riceve le righe
+	 * @param variables: I parametri della query
+	 * @throws SQLException
+	 */
+	public void query(String query, RowHandler handler, Object... variables) throws SQLException {
+		query(query, FetchSize, handler, variables);
 	}
 	
-	public ResultSet executeQuery(String query, Object... variables) throws SQLException {
-		PreparedStatement statement = this.connection.prepareStatement(query);
+	/**
+	 * Esegue una query e passa ogni riga ottenuta all'handler specificato, leggendo le righe a blocchi della dimensione indicata.
+	 * 
+	 * @param query: La query da eseguire
+	 * @param fetchSize: Il numero di righe da leggere alla volta
+	 * @param handler: L'handler che riceve le righe
+	 * @param variables: I parametri della query
+	 * @throws SQLException
+	 */
+	public void query(String query, int fetchSize, RowHandler handler, Object... variables) throws SQLException {
+		StatementCache cache = borrowReader();
 		
-		for (int i = 0; i < variables.length; i++) {
-			statement.setObject(i+1, variables[i]);
+		try {
+			PreparedStatement statement = cache.acquire(query);
+			
+			try {
+				bind(statement, variables);
+				statement.setFetchSize(fetchSize);
+				
+				ResultSet set = statement.executeQuery();
+				try {
+					while (set.next()) {
+						handler.handle(set);
+					}
+				} finally {
+					set.close();
+				}
+			} finally {
+				cache.release(query, statement);
+			}
+		} finally {
+			returnReader(cache);
 		}
+	}
+	
+	/**
+	 * Esegue una query e restituisce la lista degli oggetti ottenuti applicando il mapper ad ogni riga.
+	 * 
+	 * @param query: La query da eseguire
+	 * @param mapper: Il mapper da applicare ad ogni riga
+	 * @param variables: I parametri della query
+	 * @return Una lista con un oggetto per ogni riga
+	 * @throws SQLException
+	 */
+	public <T> List<T> queryList(String query, RowMapper<T> mapper, Object... variables) throws SQLException {
+		ArrayList<T> results = new ArrayList<T>();
 		
-		ResultSet set = statement.executeQuery();
+		query(query, row -> results.add(mapper.map(row)), variables);
 		
-		return set;
+		return results;
 	}
 	
 	public void executeUpdate(String query, Object... variables) throws SQLException {
-		PreparedStatement statement = null;
+		this.writeLock.lock();
 		
-		statement = this.connection.prepareStatement(query);
+		try {
+			PreparedStatement statement = this.writer.acquire(query);
+			
+			try {
+				bind(statement, variables);
+				statement.executeUpdate();
+			} finally {
+				this.writer.release(query, statement);
+			}
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Esegue una serie di aggiornamenti all'interno di un'unica transazione sulla connessione di scrittura.
+	 * 
+	 * @discussion Se uno qualunque degli aggiornamenti fallisce, la transazione viene annullata e l'eccezione rilanciata.
+	 * 
+	 * @param mutations: Gli aggiornamenti da eseguire, nell'ordine in cui devono essere applicati
+	 * @throws SQLException
+	 */
+	public void executeTransaction(Iterable<Mutation> mutations) throws SQLException {
+		Connection connection = this.writer.getConnection();
 		
-		for (int i = 0; i < variables.length; i++) {
-			statement.setObject(i+1, variables[i]);
+		this.writeLock.lock();
+		
+		try {
+			connection.setAutoCommit(false);
+			
+			try {
+				for (Mutation mutation : mutations) {
+					PreparedStatement statement = this.writer.acquire(mutation.getQuery());
+					
+					try {
+						bind(statement, mutation.getVariables());
+						statement.executeUpdate();
+					} finally {
+						this.writer.release(mutation.getQuery(), statement);
+					}
+				}
+				
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} finally {
+			this.writeLock.unlock();
 		}
+	}
+	
+	/**
+	 * Porta lo schema del Database all'ultima versione disponibile, creando tabelle ed indici mancanti.
+	 * 
+	 * @return La versione dello schema al termine della migrazione
+	 * @throws SQLException
+	 */
+	public int migrate() throws SQLException {
+		this.writeLock.lock();
+		
+		try {
+			return Schema.migrate(this.writer.getConnection());
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Restituisce il piano di esecuzione di ciascuna delle query più frequenti (vedi Schema.HotQueries).
+	 * 
+	 * @return Una mappa che associa ad ogni query i passi del suo piano di esecuzione
+	 * @throws SQLException
+	 */
+	public LinkedHashMap<String, List<String>> explainHotQueries() throws SQLException {
+		LinkedHashMap<String, List<String>> plans = new LinkedHashMap<String, List<String>>();
+		
+		this.writeLock.lock();
 		
-		statement.executeUpdate();
+		try {
+			for (String query : Schema.HotQueries) {
+				plans.put(query, Schema.explain(this.writer.getConnection(), query));
+			}
+		} finally {
+			this.writeLock.unlock();
+		}
+		
+		return plans;
 	}
 	
+	/**
+	 * Controlla se il DbLayer sta lavorando con un pool di connessioni in lettura.
+	 */
+	public boolean isPooled() {
+		return !this.allReaders.isEmpty();
+	}
+	
+	/**
+	 * Restituisce un riepilogo sull'utilizzo delle connessioni e della cache degli statement.
+	 */
+	public String getStatistics() {
+		if (!isPooled()) {
+			return this.writer.toString();
+		}
+		
+		long hits = 0, misses = 0;
+		for (StatementCache reader : this.allReaders) {
+			hits += reader.getHits();
+			misses += reader.getMisses();
+		}
+		
+		return "Scrittura - " + this.writer.toString() + "\n" +
+				"Lettura - connessioni: " + this.allReaders.size() + " (libere: " + this.readers.size() + ", aggiuntive aperte: " + this.overflowReaders.get() + "), statement hit: " + hits + ", miss: " + misses;
+	}
+	
+	/**
+	 * Chiude gli statement in cache e tutte le connessioni al Database.
+	 */
+	public void close() {
+		for (StatementCache reader : this.allReaders) {
+			closeCache(reader);
+		}
+		
+		closeCache(this.writer);
+	}
+	
+	/**
+	 * Ottiene una connessione libera per eseguire una query.
+	 * 
+	 * @discussion In modalità singola viene sempre restituita la connessione di scrittura. In modalità pool, se nessun lettore
+	 * si libera entro ReaderTimeout (ad esempio per query annidate), viene aperta una connessione aggiuntiva che verrà chiusa al rilascio:
+	 * in questo modo non è possibile che i thread restino bloccati in attesa l'uno dell'altro.
+	 */
+	private StatementCache borrowReader() throws SQLException {
+		if (!isPooled()) return this.writer;
+		
+		StatementCache reader = null;
+		try {
+			reader = this.readers.poll(ReaderTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		if (reader == null) {
+			this.overflowReaders.incrementAndGet();
+			reader = new StatementCache(openReader(), StatementCacheSize);
+		}
+		
+		return reader;
+	}
+	
+	private void returnReader(StatementCache reader) {
+		if (reader == this.writer) return;
+		
+		if (this.allReaders.contains(reader)) {
+			this.readers.offer(reader);
+		}
+		else {
+			closeCache(reader);
+		}
+	}
+	
+	private Connection openReader() throws SQLException {
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:" + this.path);
+		pragma(connection, "PRAGMA busy_timeout = " + BusyTimeout);
+		pragma(connection, "PRAGMA query_only = 1");
+		return connection;
+	}
+	
+	private static void pragma(Connection connection, String pragma) throws SQLException {
+		Statement statement = connection.createStatement();
+		
+		try {
+			statement.execute(pragma);
+		} finally {
+			statement.close();
+		}
+	}
+	
+	private static void closeCache(StatementCache cache) {
+		cache.close();
+		
+		try {
+			cache.getConnection().close();
+		} catch (SQLException e) { }
+	}
+	
+	private static void bind(PreparedStatement statement, Object... variables) throws SQLException {
+		for (int i = 0; i < variables.length; i++) {
+			statement.setObject(i+1, variables[i]);
+		}
+	}
+
 }
@@ -0,0 +1,244 @@
+package phoenix.db;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import phoenix.base.Car;
+import phoenix.exceptions.UserAlreadyRegisteredException;
+
+/**
+ * Registro binario, in sola aggiunta, degli eventi che modificano lo stato della flotta.
+ * 
+ * @discussion Ogni evento viene scritto in coda al file come un record composto da lunghezza, CRC32 e contenuto.
+ * Durante la rilettura, un record incompleto o corrotto (ad esempio perché il Server è stato interrotto durante la scrittura)
+ * segna la fine del journal: il file viene troncato a quel punto, così che le scritture successive partano da un record valido.
+ * 
+ * Gli eventi vengono consegnati al sistema operativo ad ogni scrittura; se SyncOnAppend è attivo, vengono anche forzati su disco.
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class FleetJournal {
+
+	/**
+	 * Forza su disco ogni evento prima di restituire il controllo al chiamante.
+	 */
+	public static boolean SyncOnAppend = false;
+	
+	private static final byte CarClaimed = 1;
+	private static final byte CarParked = 2;
+	private static final byte UserRegistered = 3;
+	
+	private final File file;
+	private final FileOutputStream stream;
+	private final CRC32 checksum = new CRC32();
+	
+	private long size;
+	private long events = 0;
+	
+	/**
+	 * Apre un journal in scrittura, aggiungendo gli eventi in coda a quelli già presenti.
+	 * 
+	 * @param file: Il file del journal
+	 * @throws IOException
+	 */
+	public FleetJournal(File file) throws IOException {
+		this.file = file;
+		this.stream = new FileOutputStream(file, true);
+		this.size = file.length();
+	}
+	
+	/**
+	 * Registra che un'auto è stata assegnata ad un utente.
+	 */
+	public void carClaimed(Car car, String username) throws IOException {
+		Record record = new Record(CarClaimed);
+		record.writeInt(car.getId());
+		FleetSnapshot.writeString(record, username);
+		append(record);
+	}
+	
+	/**
+	 * Registra che un'auto è stata consegnata in un parcheggio.
+	 */
+	public void carParked(Car car, Integer parkingLotId, String username) throws IOException {
+		Record record = new Record(CarParked);
+		record.writeInt(car.getId());
+		record.writeInt(parkingLotId);
+		FleetSnapshot.writeString(record, username);
+		append(record);
+	}
+	
+	/**
+	 * Registra un nuovo utente.
+	 */
+	public void userRegistered(String username, String email, String name, String surname, String hashedPassword, String salt) throws IOException {
+		Record record = new Record(UserRegistered);
+		FleetSnapshot.writeString(record, username);
+		FleetSnapshot.writeString(record, email);
+		FleetSnapshot.writeString(record, name);
+		FleetSnapshot.writeString(record, surname);
+		FleetSnapshot.writeString(record, hashedPassword);
+		FleetSnapshot.writeString(record, salt);
+		append(record);
+	}
+	
+	private void append(Record record) throws IOException {
+		byte[] payload = record.toByteArray();
+		
+		this.checksum.reset();
+		this.checksum.update(payload, 0, payload.length);
+		
+		byte[] buffer = new byte[8 + payload.length];
+		writeInt(buffer, 0, payload.length);
+		writeInt(buffer, 4, (int) this.checksum.getValue());
+		System.arraycopy(payload, 0, buffer, 8, payload.length);
+		
+		this.stream.write(buffer);
+		if (SyncOnAppend) {
+			this.stream.getFD().sync();
+		}
+		
+		this.size += buffer.length;
+		this.events++;
+	}
+	
+	/**
+	 * Riesegue tutti gli eventi registrati in un journal, applicandoli allo StorageEngine specificato.
+	 * 
+	 * @discussion L'eventuale coda incompleta o corrotta del file viene eliminata.
+	 * 
+	 * @param file: Il file del journal
+	 * @param storage: Lo StorageEngine su cui applicare gli eventi
+	 * @return Il numero di eventi applicati
+	 * @throws IOException
+	 */
+	public static long replay(File file, StorageEngine storage) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		CRC32 checksum = new CRC32();
+		long valid = 0;
+		long events = 0;
+		
+		try {
+			while (true) {
+				int length;
+				int expected;
+				byte[] payload;
+				
+				try {
+					length = in.readInt();
+					expected = in.readInt();
+					
+					if (length <= 0 || length > file.length()) break;
+					
+					payload = new byte[length];
+					in.readFully(payload);
+				} catch (EOFException e) {
+					break;
+				}
+				
+				checksum.reset();
+				checksum.update(payload, 0, length);
+				if ((int) checksum.getValue() != expected) break;
+				
+				apply(new DataInputStream(new ByteArrayInputStream(payload)), storage);
+				
+				valid += 8 + length;
+				events++;
+			}
+		} finally {
+			in.close();
+		}
+		
+		if (valid < file.length()) {
+			System.out.println("ATTENZIONE: il journal " + file.getName() + " termina con un record incompleto, che verrà eliminato.");
+			
+			RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+			try {
+				truncated.setLength(valid);
+			} finally {
+				truncated.close();
+			}
+		}
+		
+		return events;
+	}
+	
+	private static void apply(DataInputStream in, StorageEngine storage) throws IOException {
+		switch (in.readByte()) {
+		case CarClaimed:
+			storage.assignCar(new Car(in.readInt(), null, null, null, null), FleetSnapshot.readString(in));
+			break;
+		
+		case CarParked:
+			storage.parkCar(new Car(in.readInt(), null, null, null, null), in.readInt(), FleetSnapshot.readString(in));
+			break;
+		
+		case UserRegistered:
+			try {
+				storage.createUser(FleetSnapshot.readString(in), FleetSnapshot.readString(in), FleetSnapshot.readString(in), FleetSnapshot.readString(in), FleetSnapshot.readString(in), FleetSnapshot.readString(in));
+			} catch (UserAlreadyRegisteredException | StorageException e) { }
+			break;
+		
+		default:
+			throw new IOException("Evento sconosciuto nel journal.");
+		}
+	}
+	
+	public File getFile() {
+		return this.file;
+	}
+	
+	/**
+	 * Restituisce la dimensione attuale del journal, in byte.
+	 */
+	public long getSize() {
+		return this.size;
+	}
+	
+	/**
+	 * Restituisce il numero di eventi scritti da quando il journal è stato aperto.
+	 */
+	public long getEvents() {
+		return this.events;
+	}
+	
+	public void close() throws IOException {
+		this.stream.getFD().sync();
+		this.stream.close();
+	}
+	
+	private static void writeInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+	
+	/**
+	 * Il contenuto di un record, preceduto dal tipo di evento.
+	 */
+	private static class Record extends DataOutputStream {
+	
+		Record(byte type) throws IOException {
+			super(new ByteArrayOutputStream(32));
+			writeByte(type);
+		}
+		
+		byte[] toByteArray() {
+			return ((ByteArrayOutputStream) this.out).toByteArray();
+		}
+	
+	}
+
+}
@@ -0,0 +1,103 @@
+package phoenix.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import phoenix.base.Car;
+import phoenix.base.CarType;
+import phoenix.base.ParkingLot;
+
+/**
+ * Carica dal Database i parcheggi e le auto attualmente parcheggiate in ciascuno di essi.
+ * 
+ * @discussion loadParkingLots esegue un'unica query, che unisce parcheggi, auto e tipi, e costruisce tutti i ParkingLot
+ * in una sola passata sulle righe. loadParkingLotsPerLot mantiene il vecchio comportamento (una query per i parcheggi ed una
+ * per ogni parcheggio) ed è utilizzato solamente per confronto (vedi FleetLoadBenchmark).
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class FleetLoader {
+
+	private static final String ParkingLotsWithCars = "SELECT parkingLot.id AS lotId, parkingLot.name AS lotName, address, latitude, longitude, altitude, lots, " +
+			"car.id AS carId, car.name AS carName, color, plate, type.id AS typeId, type.name AS typeName " +
+			"FROM \"ParkingLot\" LEFT JOIN \"Car\" ON \"Car\".currentParkingLot = \"ParkingLot\".id LEFT JOIN \"Type\" ON \"Type\".id = \"Car\".type";
+	
+	private static final String ParkingLots = "SELECT id, name, address, latitude, longitude, altitude, lots FROM \"ParkingLot\"";
+	
+	static final String ParkedCars = "SELECT car.id AS carId, car.name AS carName, color, plate, type.id AS typeId, type.name AS typeName FROM \"Car\" LEFT JOIN \"Type\" ON \"Type\".id = \"Car\".type WHERE currentParkingLot = ?";
+	
+	private final DbLayer dbLayer;
+	
+	public FleetLoader(DbLayer layer) {
+		this.dbLayer = layer;
+	}
+	
+	/**
+	 * Carica tutti i parcheggi, con le relative auto, usando un'unica query.
+	 * 
+	 * @return Una ConcurrentHashMap che associa ad ogni ID il relativo parcheggio
+	 * @throws SQLException
+	 */
+	public ConcurrentHashMap<Integer, ParkingLot> loadParkingLots() throws SQLException {
+		ConcurrentHashMap<Integer, ParkingLot> parkingLots = new ConcurrentHashMap<Integer, ParkingLot>();
+		
+		this.dbLayer.query(ParkingLotsWithCars, row -> {
+			Integer id = row.getInt("lotId");
+			ParkingLot lot = parkingLots.get(id);
+			
+			if (lot == null) {
+				lot = new ParkingLot(id, row.getString("lotName"), row.getString("address"), row.getDouble("latitude"), row.getDouble("longitude"), row.getDouble("altitude"), row.getInt("lots"));
+				parkingLots.put(id, lot);
+			}
+			
+			if (row.getObject("carId") != null) {
+				lot.add(readCar(row));
+			}
+		});
+		
+		return parkingLots;
+	}
+	
+	/**
+	 * Carica tutti i parcheggi eseguendo una query per l'elenco dei parcheggi ed una per le auto di ogni parcheggio.
+	 * 
+	 * @return Una ConcurrentHashMap che associa ad ogni ID il relativo parcheggio
+	 * @throws SQLException
+	 */
+	public ConcurrentHashMap<Integer, ParkingLot> loadParkingLotsPerLot() throws SQLException {
+		ConcurrentHashMap<Integer, ParkingLot> parkingLots = new ConcurrentHashMap<Integer, ParkingLot>();
+		
+		this.dbLayer.query(ParkingLots, row -> {
+			ParkingLot lot = new ParkingLot(row.getInt("id"), row.getString("name"), row.getString("address"), row.getDouble("latitude"), row.getDouble("longitude"), row.getDouble("altitude"), row.getInt("lots"));
+			lot.addAll(loadParkedCars(row.getInt("id")));
+			parkingLots.put(row.getInt("id"), lot);
+		});
+		
+		return parkingLots;
+	}
+	
+	/**
+	 * Ottiene il Set delle auto parcheggiate in un parcheggio specificato.
+	 * 
+	 * @param parkingLot: L'ID del parcheggio
+	 * @return Un Set di Car con le auto parcheggiate in questo parcheggio
+	 * @throws SQLException
+	 */
+	public Set<Car> loadParkedCars(Integer parkingLot) throws SQLException {
+		return new HashSet<Car>(this.dbLayer.queryList(ParkedCars, FleetLoader::readCar, parkingLot));
+	}
+	
+	/**
+	 * Costruisce un'istanza di Car a partire dalla riga corrente di una query.
+	 * 
+	 * @discussion La riga deve contenere le colonne carId, carName, color, plate, typeId e typeName.
+	 */
+	public static Car readCar(ResultSet row) throws SQLException {
+		return new Car(row.getInt("carId"), row.getString("carName"), row.getString("color"), row.getString("plate"), new CarType(row.getInt("typeId"), row.getString("typeName")));
+	}
+
+}
@@ -0,0 +1,255 @@
+package phoenix.db;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import phoenix.base.Car;
+import phoenix.base.CarType;
+import phoenix.base.ParkingLot;
+import phoenix.base.User;
+
+/**
+ * Rappresenta una copia completa dello stato della flotta: tipi, parcheggi, auto (con il parcheggio in cui si trovano) ed utenti.
+ * 
+ * @discussion Lo snapshot viene catturato da un qualunque StorageEngine e può essere salvato su file in formato binario,
+ * che viene poi letto tramite MappedFleetSnapshot. La generazione indica il primo journal da rieseguire dopo aver caricato lo snapshot.
+ * 
+ * @author Alessio Moiso
+ * @version 1.1
+ */
+public class FleetSnapshot {
+
+	static final int Magic = 0x50485853; // "PHXS"
+	static final int FormatVersion = 2;
+	
+	/**
+	 * Dimensioni, in byte, dell'intestazione e di ciascun record (vedi write).
+	 */
+	static final int HeaderSize = 56;
+	static final int TypeRecordSize = 8;
+	static final int LotRecordSize = 40;
+	static final int CarRecordSize = 24;
+	static final int UserRecordSize = 28;
+	
+	private final long generation;
+	private final HashMap<Integer, CarType> types;
+	private final ConcurrentHashMap<Integer, ParkingLot> fleet;
+	private final HashMap<Integer, Car> cars;
+	private final HashMap<String, User> users;
+	
+	private FleetSnapshot(long generation, HashMap<Integer, CarType> types, ConcurrentHashMap<Integer, ParkingLot> fleet, HashMap<Integer, Car> cars, HashMap<String, User> users) {
+		this.generation = generation;
+		this.types = types;
+		this.fleet = fleet;
+		this.cars = cars;
+		this.users = users;
+	}
+	
+	/**
+	 * Cattura lo stato attuale di uno StorageEngine.
+	 * 
+	 * @param storage: Lo StorageEngine da copiare
+	 * @param generation: La generazione da associare allo snapshot
+	 * @return Un nuovo FleetSnapshot
+	 * @throws StorageException
+	 */
+	public static FleetSnapshot capture(StorageEngine storage, long generation) throws StorageException {
+		return new FleetSnapshot(generation, storage.loadTypes(), storage.loadFleet(), storage.loadCars(), storage.loadUsers());
+	}
+	
+	/**
+	 * Salva lo snapshot su file.
+	 * 
+	 * @discussion Il file viene scritto in una copia temporanea, forzato su disco e solo allora rinominato, così che non possa mai
+	 * esistere uno snapshot incompleto. Il formato è pensato per essere mappato in memoria (vedi MappedFleetSnapshot):
+	 * un'intestazione con numero e posizione di ogni sezione, una sezione di record a dimensione fissa per tipi, parcheggi,
+	 * auto ed utenti (questi ultimi ordinati per username) ed infine un archivio di stringhe, a cui i record fanno riferimento
+	 * tramite la loro posizione. Le stringhe ripetute (colori, tipi, …) vengono salvate una volta sola.
+	 * 
+	 * @param file: Il file in cui salvare lo snapshot
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		StringPool strings = new StringPool();
+		
+		HashMap<Integer, Integer> locations = new HashMap<Integer, Integer>();
+		for (ParkingLot parkingLot : this.fleet.values()) {
+			for (Car car : parkingLot) {
+				locations.put(car.getId(), parkingLot.getId());
+			}
+		}
+		
+		ArrayList<User> sortedUsers = new ArrayList<User>(this.users.values());
+		Collections.sort(sortedUsers, (first, second) -> first.getUsername().compareTo(second.getUsername()));
+		
+		int typesOffset = HeaderSize;
+		int lotsOffset = typesOffset + this.types.size() * TypeRecordSize;
+		int carsOffset = lotsOffset + this.fleet.size() * LotRecordSize;
+		int usersOffset = carsOffset + this.cars.size() * CarRecordSize;
+		int stringsOffset = usersOffset + sortedUsers.size() * UserRecordSize;
+		
+		File temporary = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temporary);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		
+		try {
+			out.writeInt(Magic);
+			out.writeInt(FormatVersion);
+			out.writeLong(this.generation);
+			out.writeInt(this.types.size());
+			out.writeInt(typesOffset);
+			out.writeInt(this.fleet.size());
+			out.writeInt(lotsOffset);
+			out.writeInt(this.cars.size());
+			out.writeInt(carsOffset);
+			out.writeInt(sortedUsers.size());
+			out.writeInt(usersOffset);
+			out.writeInt(stringsOffset);
+			out.writeInt(0);
+			
+			for (CarType type : this.types.values()) {
+				out.writeInt(type.getId());
+				out.writeInt(strings.add(type.getName()));
+			}
+			
+			for (ParkingLot parkingLot : this.fleet.values()) {
+				out.writeInt(parkingLot.getId());
+				out.writeInt(strings.add(parkingLot.getName()));
+				out.writeInt(strings.add(parkingLot.getAddress()));
+				out.writeInt(parkingLot.getLots());
+				out.writeDouble(parkingLot.getPosition().getLatitude());
+				out.writeDouble(parkingLot.getPosition().getLongitude());
+				out.writeDouble(parkingLot.getPosition().getAltitude());
+			}
+			
+			for (Car car : this.cars.values()) {
+				Integer location = locations.get(car.getId());
+				
+				out.writeInt(car.getId());
+				out.writeInt(strings.add(car.getName()));
+				out.writeInt(strings.add(car.getColor()));
+				out.writeInt(strings.add(car.getPlate()));
+				out.writeInt((car.getType() == null) ? -1 : car.getType().getId());
+				out.writeInt((location == null) ? -1 : location);
+			}
+			
+			for (User user : sortedUsers) {
+				out.writeInt(strings.add(user.getUsername()));
+				out.writeInt(strings.add(user.getEmail()));
+				out.writeInt(strings.add(user.getName()));
+				out.writeInt(strings.add(user.getSurname()));
+				out.writeInt(strings.add(user.getHashedPassword()));
+				out.writeInt(strings.add(user.getSaltPassword()));
+				out.writeInt((user.getLoadedCar() == null) ? -1 : user.getLoadedCar().getId());
+			}
+			
+			strings.writeTo(out);
+			
+			out.flush();
+			stream.getFD().sync();
+		} finally {
+			out.close();
+		}
+		
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Crea un MemoryStorageEngine che contiene lo stato descritto dallo snapshot.
+	 */
+	public MemoryStorageEngine toStorage() {
+		MemoryStorageEngine storage = new MemoryStorageEngine();
+		
+		for (CarType type : this.types.values()) {
+			storage.addType(type);
+		}
+		
+		HashMap<Integer, Integer> locations = new HashMap<Integer, Integer>();
+		
+		for (ParkingLot parkingLot : this.fleet.values()) {
+			storage.addParkingLot(parkingLot);
+			
+			for (Car car : parkingLot) {
+				locations.put(car.getId(), parkingLot.getId());
+			}
+		}
+		
+		for (Map.Entry<Integer, Car> car : this.cars.entrySet()) {
+			storage.addCar(car.getValue(), locations.get(car.getKey()));
+		}
+		
+		for (User user : this.users.values()) {
+			storage.addUser(user);
+		}
+		
+		return storage;
+	}
+	
+	public long getGeneration() {
+		return this.generation;
+	}
+	
+	@Override
+	public String toString() {
+		return "Snapshot " + this.generation + ": " + this.fleet.size() + " parcheggi, " + this.cars.size() + " auto, " + this.users.size() + " utenti";
+	}
+	
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) out.writeUTF(value);
+	}
+	
+	static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+	
+	/**
+	 * Archivio delle stringhe di uno snapshot: ogni stringa viene salvata come lunghezza e byte UTF-8, una volta sola.
+	 */
+	private static class StringPool {
+	
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(this.bytes);
+		private final HashMap<String, Integer> offsets = new HashMap<String, Integer>();
+		
+		/**
+		 * Aggiunge una stringa all'archivio.
+		 * 
+		 * @return La posizione della stringa rispetto all'inizio dell'archivio, oppure -1 se la stringa è null
+		 */
+		int add(String value) throws IOException {
+			if (value == null) return -1;
+			
+			Integer offset = this.offsets.get(value);
+			if (offset == null) {
+				byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+				
+				offset = this.out.size();
+				this.out.writeInt(encoded.length);
+				this.out.write(encoded);
+				this.offsets.put(value, offset);
+			}
+			
+			return offset;
+		}
+		
+		void writeTo(DataOutputStream destination) throws IOException {
+			this.bytes.writeTo(destination);
+		}
+	
+	}
+
+}
@@ -0,0 +1,377 @@
+package phoenix.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import phoenix.base.Car;
+import phoenix.base.CarType;
+import phoenix.base.ParkingLot;
+import phoenix.base.User;
+import phoenix.exceptions.UserAlreadyRegisteredException;
+
+/**
+ * Implementazione di StorageEngine che mantiene lo stato in memoria e lo rende persistente con un journal ed uno snapshot.
+ * 
+ * @discussion Ogni evento che modifica la flotta (auto prelevata, auto consegnata, utente registrato) viene applicato
+ * allo stato in memoria e poi aggiunto in coda al journal della generazione corrente. Periodicamente viene scritto uno snapshot
+ * completo: il journal passa alla generazione successiva e quelli precedenti, ormai compresi nello snapshot, vengono eliminati.
+ * 
+ * All'avvio viene mappato in memoria l'ultimo snapshot (vedi MappedFleetSnapshot) e vengono rieseguiti, in ordine, i journal successivi;
+ * gli utenti vengono letti dallo snapshot soltanto quando servono. Ogni snapshot viene salvato in un file diverso, così che quello
+ * attualmente mappato non venga mai sovrascritto. Se la cartella non contiene ancora uno snapshot valido, lo stato iniziale viene
+ * copiato dallo StorageEngine restituito da seed (ad esempio il Database SQLite).
+ * 
+ * La data dell'ultimo accesso non viene registrata nel journal (vedi LoginCallable).
+ * 
+ * @author Alessio Moiso
+ * @version 1.1
+ */
+public class JournalStorageEngine implements StorageEngine {
+
+	/**
+	 * Intervallo, in secondi, tra due snapshot periodici.
+	 */
+	public static int SnapshotInterval = 60;
+	
+	private static String SnapshotPrefix = "fleet-";
+	private static String SnapshotSuffix = ".snapshot";
+	private static String JournalPrefix = "journal-";
+	private static String JournalSuffix = ".log";
+	
+	private final File directory;
+	private final MemoryStorageEngine memory;
+	
+	/**
+	 * Garantisce che gli eventi vengano scritti nel journal nello stesso ordine in cui sono applicati alla memoria.
+	 */
+	private final ReentrantLock journalLock = new ReentrantLock();
+	private final ReentrantLock snapshotLock = new ReentrantLock();
+	private final ScheduledExecutorService snapshots;
+	
+	private FleetJournal journal;
+	private long generation;
+	
+	private long eventsSinceSnapshot = 0;
+	private long journalErrors = 0;
+	private long snapshotsWritten = 0;
+	private long lastSnapshotTime = 0;
+	private long replayedEvents = 0;
+	private long startupTime = 0;
+	
+	/**
+	 * Apre, o crea, lo stato della flotta contenuto nella cartella specificata.
+	 * 
+	 * @param directory: La cartella che contiene snapshot e journal
+	 * @param seed: Restituisce lo StorageEngine da cui copiare lo stato iniziale, usato solamente in assenza di snapshot
+	 * @throws StorageException
+	 */
+	public JournalStorageEngine(File directory, Callable<StorageEngine> seed) throws StorageException {
+		long start = System.nanoTime();
+		
+		this.directory = directory;
+		this.directory.mkdirs();
+		
+		MappedFleetSnapshot snapshot = mapLatestSnapshot();
+		boolean compact;
+		
+		try {
+			if (snapshot != null) {
+				this.memory = snapshot.toStorage();
+				this.generation = snapshot.getGeneration();
+				compact = false;
+			}
+			else {
+				StorageEngine source = seed.call();
+				
+				try {
+					this.memory = FleetSnapshot.capture(source, 0).toStorage();
+				} finally {
+					source.close();
+				}
+				
+				this.generation = 0;
+				compact = true;
+			}
+			
+			for (Long journalGeneration : listGenerations(JournalPrefix, JournalSuffix)) {
+				if (journalGeneration < this.generation) continue;
+				
+				this.replayedEvents += FleetJournal.replay(journalFile(journalGeneration), this.memory);
+				this.generation = journalGeneration;
+			}
+			
+			this.journal = new FleetJournal(journalFile(this.generation));
+		} catch (StorageException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new StorageException("Impossibile caricare lo stato della flotta da " + directory + ".", e);
+		}
+		
+		if (compact || this.replayedEvents > 0) {
+			writeSnapshot(true);
+		}
+		
+		this.startupTime = (System.nanoTime() - start) / 1000000;
+		System.out.println("INFO: stato della flotta caricato in " + this.startupTime + " ms (generazione " + this.generation + ", " + this.replayedEvents + " eventi rieseguiti).");
+		
+		this.snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "Phoenix-Snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		this.snapshots.scheduleWithFixedDelay(() -> {
+			try {
+				snapshot();
+			} catch (StorageException e) {
+				e.printStackTrace();
+				System.out.println("ERRORE: non è stato possibile salvare lo snapshot della flotta.");
+			}
+		}, SnapshotInterval, SnapshotInterval, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Scrive uno snapshot completo dello stato attuale ed elimina i journal che contiene, se vi sono eventi nuovi.
+	 * 
+	 * @discussion Lo stato viene copiato, ed il journal passa alla generazione successiva, in un'unica sezione critica;
+	 * la scrittura su disco avviene invece senza bloccare gli eventi.
+	 * 
+	 * @throws StorageException
+	 */
+	public void snapshot() throws StorageException {
+		writeSnapshot(false);
+	}
+	
+	private void writeSnapshot(boolean force) throws StorageException {
+		this.snapshotLock.lock();
+		
+		try {
+			FleetSnapshot snapshot;
+			long start = System.nanoTime();
+			
+			this.journalLock.lock();
+			try {
+				if (this.eventsSinceSnapshot == 0 && !force) return;
+				
+				this.journal.close();
+				this.generation++;
+				this.journal = new FleetJournal(journalFile(this.generation));
+				this.eventsSinceSnapshot = 0;
+				
+				snapshot = FleetSnapshot.capture(this.memory, this.generation);
+			} catch (IOException e) {
+				throw new StorageException("Impossibile passare al journal successivo.", e);
+			} finally {
+				this.journalLock.unlock();
+			}
+			
+			try {
+				snapshot.write(snapshotFile(snapshot.getGeneration()));
+			} catch (IOException e) {
+				throw new StorageException("Impossibile scrivere lo snapshot della flotta.", e);
+			}
+			
+			for (Long journalGeneration : listGenerations(JournalPrefix, JournalSuffix)) {
+				if (journalGeneration < snapshot.getGeneration()) {
+					journalFile(journalGeneration).delete();
+				}
+			}
+			
+			for (Long snapshotGeneration : listGenerations(SnapshotPrefix, SnapshotSuffix)) {
+				if (snapshotGeneration < snapshot.getGeneration()) {
+					snapshotFile(snapshotGeneration).delete();
+				}
+			}
+			
+			this.snapshotsWritten++;
+			this.lastSnapshotTime = (System.nanoTime() - start) / 1000000;
+		} finally {
+			this.snapshotLock.unlock();
+		}
+	}
+	
+	@Override
+	public ConcurrentHashMap<Integer, ParkingLot> loadFleet() {
+		return this.memory.loadFleet();
+	}
+	
+	@Override
+	public HashMap<Integer, CarType> loadTypes() {
+		return this.memory.loadTypes();
+	}
+	
+	@Override
+	public HashMap<Integer, Car> loadCars() {
+		return this.memory.loadCars();
+	}
+	
+	@Override
+	public HashMap<String, User> loadUsers() {
+		return this.memory.loadUsers();
+	}
+	
+	@Override
+	public User findUser(String username) {
+		return this.memory.findUser(username);
+	}
+	
+	@Override
+	public void assignCar(Car car, String username) {
+		this.journalLock.lock();
+		
+		try {
+			this.memory.assignCar(car, username);
+			this.journal.carClaimed(car, username);
+			this.eventsSinceSnapshot++;
+		} catch (IOException e) {
+			reportJournalError("assegnazione di " + car + " a " + username, e);
+		} finally {
+			this.journalLock.unlock();
+		}
+	}
+	
+	@Override
+	public void parkCar(Car car, Integer parkingLotId, String username) {
+		this.journalLock.lock();
+		
+		try {
+			this.memory.parkCar(car, parkingLotId, username);
+			this.journal.carParked(car, parkingLotId, username);
+			this.eventsSinceSnapshot++;
+		} catch (IOException e) {
+			reportJournalError("consegna di " + car + " da parte di " + username, e);
+		} finally {
+			this.journalLock.unlock();
+		}
+	}
+	
+	@Override
+	public void createUser(String username, String email, String name, String surname, String hashedPassword, String salt) throws UserAlreadyRegisteredException, StorageException {
+		this.journalLock.lock();
+		
+		try {
+			this.memory.createUser(username, email, name, surname, hashedPassword, salt);
+			this.journal.userRegistered(username, email, name, surname, hashedPassword, salt);
+			this.eventsSinceSnapshot++;
+		} catch (IOException e) {
+			this.journalErrors++;
+			throw new StorageException("Impossibile registrare l'utente " + username + " nel journal.", e);
+		} finally {
+			this.journalLock.unlock();
+		}
+	}
+	
+	@Override
+	public void touchLastLogin(String username, Date date) {
+		this.memory.touchLastLogin(username, date);
+	}
+	
+	@Override
+	public String getStatistics() {
+		this.journalLock.lock();
+		
+		try {
+			return this.memory.getStatistics() + "\n" +
+					"Journal: generazione " + this.generation + ", " + this.journal.getSize() + " byte, " + this.eventsSinceSnapshot + " eventi dall'ultimo snapshot (errori: " + this.journalErrors + ")\n" +
+					"Snapshot: " + this.snapshotsWritten + " scritti (ultimo: " + this.lastSnapshotTime + " ms), avvio in " + this.startupTime + " ms con " + this.replayedEvents + " eventi rieseguiti";
+		} finally {
+			this.journalLock.unlock();
+		}
+	}
+	
+	/**
+	 * Interrompe gli snapshot periodici, scrive uno snapshot finale e chiude il journal.
+	 */
+	@Override
+	public void close() {
+		this.snapshots.shutdown();
+		
+		try {
+			this.snapshots.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) { }
+		
+		try {
+			snapshot();
+		} catch (StorageException e) {
+			e.printStackTrace();
+			System.out.println("ERRORE: non è stato possibile salvare lo snapshot finale della flotta; verrà ricostruito dal journal.");
+		}
+		
+		this.journalLock.lock();
+		try {
+			this.journal.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			this.journalLock.unlock();
+		}
+	}
+	
+	private void reportJournalError(String description, IOException e) {
+		this.journalErrors++;
+		
+		e.printStackTrace();
+		System.out.println("\n\nERRORE: non è stato possibile registrare l'evento (" + description + ") nel journal.");
+	}
+	
+	private File journalFile(long generation) {
+		return new File(this.directory, JournalPrefix + generation + JournalSuffix);
+	}
+	
+	private File snapshotFile(long generation) {
+		return new File(this.directory, SnapshotPrefix + generation + SnapshotSuffix);
+	}
+	
+	/**
+	 * Mappa in memoria lo snapshot valido più recente presente nella cartella.
+	 * 
+	 * @return Lo snapshot mappato, oppure null se la cartella non contiene snapshot validi
+	 */
+	private MappedFleetSnapshot mapLatestSnapshot() {
+		List<Long> generations = listGenerations(SnapshotPrefix, SnapshotSuffix);
+		
+		for (int i = generations.size() - 1; i >= 0; i--) {
+			try {
+				return new MappedFleetSnapshot(snapshotFile(generations.get(i)));
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.out.println("ATTENZIONE: lo snapshot " + snapshotFile(generations.get(i)).getName() + " non è leggibile e verrà ignorato.");
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Restituisce, in ordine crescente, le generazioni dei file con il prefisso ed il suffisso specificati presenti nella cartella.
+	 */
+	private List<Long> listGenerations(String prefix, String suffix) {
+		ArrayList<Long> generations = new ArrayList<Long>();
+		String[] names = this.directory.list();
+		
+		if (names != null) {
+			for (String name : names) {
+				if (!name.startsWith(prefix) || !name.endsWith(suffix)) continue;
+				
+				try {
+					generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+				} catch (NumberFormatException e) { }
+			}
+		}
+		
+		Collections.sort(generations);
+		return generations;
+	}
+
+}
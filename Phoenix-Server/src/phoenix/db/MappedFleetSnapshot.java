@@ -0,0 +1,225 @@
+package phoenix.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import phoenix.base.Car;
+import phoenix.base.CarType;
+import phoenix.base.ParkingLot;
+import phoenix.base.User;
+
+/**
+ * Legge uno snapshot scritto da FleetSnapshot, mappandolo in memoria tramite FileChannel.map.
+ * 
+ * @discussion All'apertura viene letta soltanto l'intestazione: tipi, parcheggi, auto ed utenti vengono creati solamente
+ * quando richiesti, leggendo direttamente i record dalla regione mappata. Gli utenti sono ordinati per username,
+ * quindi findUser individua un utente con una ricerca binaria, senza creare nessun'altra istanza.
+ * 
+ * La regione mappata resta valida anche dopo la chiusura del file e dopo la scrittura di uno snapshot più recente,
+ * che viene sempre salvato in un file diverso (vedi JournalStorageEngine).
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class MappedFleetSnapshot {
+
+	private final File file;
+	private final MappedByteBuffer buffer;
+	
+	private final long generation;
+	private final int typeCount;
+	private final int typesOffset;
+	private final int lotCount;
+	private final int lotsOffset;
+	private final int carCount;
+	private final int carsOffset;
+	private final int userCount;
+	private final int usersOffset;
+	private final int stringsOffset;
+	
+	/**
+	 * Mappa in memoria lo snapshot contenuto nel file specificato.
+	 * 
+	 * @param file: Il file dello snapshot
+	 * @throws IOException in caso di errore di lettura o di file non valido
+	 */
+	public MappedFleetSnapshot(File file) throws IOException {
+		this.file = file;
+		
+		RandomAccessFile stream = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = stream.getChannel();
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			stream.close();
+		}
+		
+		if (this.buffer.capacity() < FleetSnapshot.HeaderSize || this.buffer.getInt(0) != FleetSnapshot.Magic || this.buffer.getInt(4) != FleetSnapshot.FormatVersion) {
+			throw new IOException("Il file " + file + " non contiene uno snapshot valido.");
+		}
+		
+		this.generation = this.buffer.getLong(8);
+		this.typeCount = this.buffer.getInt(16);
+		this.typesOffset = this.buffer.getInt(20);
+		this.lotCount = this.buffer.getInt(24);
+		this.lotsOffset = this.buffer.getInt(28);
+		this.carCount = this.buffer.getInt(32);
+		this.carsOffset = this.buffer.getInt(36);
+		this.userCount = this.buffer.getInt(40);
+		this.usersOffset = this.buffer.getInt(44);
+		this.stringsOffset = this.buffer.getInt(48);
+		
+		if (this.stringsOffset > this.buffer.capacity()) {
+			throw new IOException("Il file " + file + " contiene uno snapshot incompleto.");
+		}
+	}
+	
+	public long getGeneration() {
+		return this.generation;
+	}
+	
+	public int getUserCount() {
+		return this.userCount;
+	}
+	
+	public HashMap<Integer, CarType> loadTypes() {
+		HashMap<Integer, CarType> types = new HashMap<Integer, CarType>();
+		
+		for (int i = 0, record = this.typesOffset; i < this.typeCount; i++, record += FleetSnapshot.TypeRecordSize) {
+			CarType type = new CarType(this.buffer.getInt(record), readString(record + 4));
+			types.put(type.getId(), type);
+		}
+		
+		return types;
+	}
+	
+	/**
+	 * Crea un MemoryStorageEngine con i tipi, i parcheggi e le auto dello snapshot.
+	 * 
+	 * @discussion Gli utenti non vengono copiati: il MemoryStorageEngine li legge dallo snapshot al primo utilizzo.
+	 */
+	public MemoryStorageEngine toStorage() {
+		MemoryStorageEngine storage = new MemoryStorageEngine(this);
+		HashMap<Integer, CarType> types = loadTypes();
+		
+		for (CarType type : types.values()) {
+			storage.addType(type);
+		}
+		
+		for (int i = 0, record = this.lotsOffset; i < this.lotCount; i++, record += FleetSnapshot.LotRecordSize) {
+			storage.addParkingLot(new ParkingLot(this.buffer.getInt(record), readString(record + 4), readString(record + 8),
+					this.buffer.getDouble(record + 16), this.buffer.getDouble(record + 24), this.buffer.getDouble(record + 32), this.buffer.getInt(record + 12)));
+		}
+		
+		for (int i = 0, record = this.carsOffset; i < this.carCount; i++, record += FleetSnapshot.CarRecordSize) {
+			int location = this.buffer.getInt(record + 20);
+			storage.addCar(readCar(record, types), (location < 0) ? null : location);
+		}
+		
+		return storage;
+	}
+	
+	/**
+	 * Cerca un utente nello snapshot.
+	 * 
+	 * @param username: L'username dell'utente
+	 * @param cars: Il parco auto, usato per collegare l'eventuale auto in uso
+	 * @return Una nuova istanza di User, oppure null se l'utente non è presente nello snapshot
+	 */
+	public User findUser(String username, Map<Integer, Car> cars) {
+		int record = findUserRecord(username);
+		return (record < 0) ? null : readUser(record, cars);
+	}
+	
+	/**
+	 * Controlla se un utente è presente nello snapshot, senza creare alcuna istanza di User.
+	 */
+	public boolean containsUser(String username) {
+		return findUserRecord(username) >= 0;
+	}
+	
+	/**
+	 * Crea tutti gli utenti presenti nello snapshot.
+	 * 
+	 * @param cars: Il parco auto, usato per collegare l'eventuale auto in uso
+	 */
+	public HashMap<String, User> loadUsers(Map<Integer, Car> cars) {
+		HashMap<String, User> users = new HashMap<String, User>();
+		
+		for (int i = 0, record = this.usersOffset; i < this.userCount; i++, record += FleetSnapshot.UserRecordSize) {
+			User user = readUser(record, cars);
+			users.put(user.getUsername(), user);
+		}
+		
+		return users;
+	}
+	
+	@Override
+	public String toString() {
+		return this.file.getName() + " (generazione " + this.generation + ", " + this.buffer.capacity() + " byte): " + this.lotCount + " parcheggi, " + this.carCount + " auto, " + this.userCount + " utenti";
+	}
+	
+	private int findUserRecord(String username) {
+		int low = 0;
+		int high = this.userCount - 1;
+		
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int record = this.usersOffset + middle * FleetSnapshot.UserRecordSize;
+			int comparison = readString(record).compareTo(username);
+			
+			if (comparison < 0) {
+				low = middle + 1;
+			}
+			else if (comparison > 0) {
+				high = middle - 1;
+			}
+			else {
+				return record;
+			}
+		}
+		
+		return -1;
+	}
+	
+	private Car readCar(int record, HashMap<Integer, CarType> types) {
+		int type = this.buffer.getInt(record + 16);
+		return new Car(this.buffer.getInt(record), readString(record + 4), readString(record + 8), readString(record + 12), (type < 0) ? null : types.get(type));
+	}
+	
+	private User readUser(int record, Map<Integer, Car> cars) {
+		User user = new User(readString(record), readString(record + 4), readString(record + 8), readString(record + 12), readString(record + 16), readString(record + 20));
+		
+		int car = this.buffer.getInt(record + 24);
+		if (car >= 0) {
+			user.setLoadedCar(cars.get(car));
+		}
+		
+		return user;
+	}
+	
+	/**
+	 * Legge la stringa a cui fa riferimento il campo che si trova nella posizione specificata.
+	 */
+	private String readString(int field) {
+		int offset = this.buffer.getInt(field);
+		if (offset < 0) return null;
+		
+		int position = this.stringsOffset + offset;
+		byte[] bytes = new byte[this.buffer.getInt(position)];
+		
+		ByteBuffer view = this.buffer.duplicate();
+		view.position(position + 4);
+		view.get(bytes);
+		
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,297 @@
+package phoenix.db;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import phoenix.base.Car;
+import phoenix.base.CarType;
+import phoenix.base.ParkingLot;
+import phoenix.base.User;
+import phoenix.exceptions.UserAlreadyRegisteredException;
+
+/**
+ * Implementazione di StorageEngine che mantiene tutti i dati in memoria, senza alcun file.
+ * 
+ * @discussion Pensata per i benchmark e per i test di carico: tutte le operazioni vengono applicate immediatamente
+ * e nulla viene conservato alla chiusura. I dati iniziali possono essere inseriti con addType, addParkingLot, addCar, addUser
+ * oppure generati casualmente con random.
+ * 
+ * Se creata a partire da un MappedFleetSnapshot, gli utenti vengono letti dallo snapshot soltanto al primo utilizzo
+ * (login, assegnazione, consegna); da quel momento vengono mantenuti in memoria come tutti gli altri.
+ * 
+ * @author Alessio Moiso
+ * @version 1.1
+ */
+public class MemoryStorageEngine implements StorageEngine {
+
+	/**
+	 * I tipi di auto creati da random, gli stessi di Init.sql.
+	 */
+	private static final String[] TypeNames = { "City Car", "Mini", "Economy", "Compact", "Furgone", "Medio", "Comfort", "Cargo", "Elettrico" };
+	
+	private final ConcurrentHashMap<Integer, CarType> types = new ConcurrentHashMap<Integer, CarType>();
+	private final ConcurrentHashMap<Integer, ParkingLot> parkingLots = new ConcurrentHashMap<Integer, ParkingLot>();
+	private final ConcurrentHashMap<Integer, Car> cars = new ConcurrentHashMap<Integer, Car>();
+	private final ConcurrentHashMap<String, StoredUser> users = new ConcurrentHashMap<String, StoredUser>();
+	
+	/**
+	 * Parcheggio in cui si trova ciascuna auto: le auto in uso non sono presenti.
+	 */
+	private final ConcurrentHashMap<Integer, Integer> carLocations = new ConcurrentHashMap<Integer, Integer>();
+	
+	/**
+	 * Lo snapshot da cui leggere gli utenti non ancora presenti in memoria, oppure null.
+	 */
+	private final MappedFleetSnapshot snapshot;
+	
+	private final AtomicLong assignments = new AtomicLong();
+	private final AtomicLong parkings = new AtomicLong();
+	
+	public MemoryStorageEngine() {
+		this(null);
+	}
+	
+	public MemoryStorageEngine(MappedFleetSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+	
+	/**
+	 * Crea un'istanza con il numero di parcheggi specificato, distribuiti casualmente sull'area coperta dal servizio (vedi User),
+	 * ognuno con lo stesso numero di auto di tipo casuale.
+	 * 
+	 * @param lots: Il numero di parcheggi
+	 * @param carsPerLot: Il numero di auto in ogni parcheggio
+	 * @param seed: Il seme del generatore casuale, per ottenere sempre la stessa flotta
+	 * @return Una nuova istanza di MemoryStorageEngine
+	 */
+	public static MemoryStorageEngine random(int lots, int carsPerLot, long seed) {
+		MemoryStorageEngine engine = new MemoryStorageEngine();
+		Random random = new Random(seed);
+		
+		for (int i = 0; i < TypeNames.length; i++) {
+			engine.addType(new CarType(i + 1, TypeNames[i]));
+		}
+		
+		int carId = 1;
+		for (int lot = 1; lot <= lots; lot++) {
+			double latitude = User.bottomRight.getLatitude() + random.nextDouble() * (User.topLeft.getLatitude() - User.bottomRight.getLatitude());
+			double longitude = User.topLeft.getLongitude() + random.nextDouble() * (User.bottomRight.getLongitude() - User.topLeft.getLongitude());
+			engine.addParkingLot(new ParkingLot(lot, "Parcheggio " + lot, "Via " + lot, latitude, longitude, 0.0, carsPerLot * 2));
+			
+			for (int i = 0; i < carsPerLot; i++, carId++) {
+				CarType type = engine.types.get(1 + random.nextInt(TypeNames.length));
+				engine.addCar(new Car(carId, "Auto " + carId, "Bianco", plate(carId), type), lot);
+			}
+		}
+		
+		return engine;
+	}
+	
+	/**
+	 * Genera una targa nel formato AA000AA, diversa per ogni ID: le auto vengono confrontate tramite la targa.
+	 */
+	private static String plate(int carId) {
+		int letters = carId / 1000;
+		return String.format("%c%c%03d%c%c", 'A' + letters / 17576 % 26, 'A' + letters / 676 % 26, carId % 1000, 'A' + letters / 26 % 26, 'A' + letters % 26);
+	}
+	
+	public void addType(CarType type) {
+		this.types.put(type.getId(), type);
+	}
+	
+	/**
+	 * Aggiunge un parcheggio: le eventuali auto già contenute nell'istanza specificata vengono ignorate.
+	 */
+	public void addParkingLot(ParkingLot parkingLot) {
+		this.parkingLots.put(parkingLot.getId(), parkingLot);
+	}
+	
+	/**
+	 * Aggiunge un'auto al parco auto.
+	 * 
+	 * @param car: L'auto da aggiungere
+	 * @param parkingLotId: Il parcheggio in cui si trova l'auto, oppure null se l'auto non è parcheggiata
+	 */
+	public void addCar(Car car, Integer parkingLotId) {
+		this.cars.put(car.getId(), car);
+		
+		if (parkingLotId != null) {
+			this.carLocations.put(car.getId(), parkingLotId);
+		}
+	}
+	
+	/**
+	 * Aggiunge un utente registrato, con l'eventuale auto in uso.
+	 */
+	public void addUser(User user) {
+		this.users.put(user.getUsername(), new StoredUser(user));
+	}
+	
+	@Override
+	public ConcurrentHashMap<Integer, ParkingLot> loadFleet() {
+		ConcurrentHashMap<Integer, ParkingLot> fleet = new ConcurrentHashMap<Integer, ParkingLot>();
+		
+		for (ParkingLot parkingLot : this.parkingLots.values()) {
+			fleet.put(parkingLot.getId(), new ParkingLot(parkingLot.getId(), parkingLot.getName(), parkingLot.getAddress(),
+					parkingLot.getPosition().getLatitude(), parkingLot.getPosition().getLongitude(), parkingLot.getPosition().getAltitude(), parkingLot.getLots()));
+		}
+		
+		for (Map.Entry<Integer, Integer> location : this.carLocations.entrySet()) {
+			ParkingLot parkingLot = fleet.get(location.getValue());
+			
+			if (parkingLot != null) {
+				parkingLot.add(this.cars.get(location.getKey()));
+			}
+		}
+		
+		return fleet;
+	}
+	
+	@Override
+	public HashMap<Integer, CarType> loadTypes() {
+		return new HashMap<Integer, CarType>(this.types);
+	}
+	
+	@Override
+	public HashMap<Integer, Car> loadCars() {
+		return new HashMap<Integer, Car>(this.cars);
+	}
+	
+	@Override
+	public HashMap<String, User> loadUsers() {
+		HashMap<String, User> users = (this.snapshot == null) ? new HashMap<String, User>() : this.snapshot.loadUsers(this.cars);
+		
+		for (StoredUser user : this.users.values()) {
+			users.put(user.username, user.toUser());
+		}
+		
+		return users;
+	}
+	
+	@Override
+	public User findUser(String username) {
+		StoredUser user = storedUser(username);
+		return (user == null) ? null : user.toUser();
+	}
+	
+	@Override
+	public void assignCar(Car car, String username) {
+		this.carLocations.remove(car.getId());
+		
+		StoredUser user = storedUser(username);
+		if (user != null) {
+			user.currentCar = car.getId();
+		}
+		
+		this.assignments.incrementAndGet();
+	}
+	
+	@Override
+	public void parkCar(Car car, Integer parkingLotId, String username) {
+		this.carLocations.put(car.getId(), parkingLotId);
+		
+		StoredUser user = storedUser(username);
+		if (user != null) {
+			user.currentCar = null;
+		}
+		
+		this.parkings.incrementAndGet();
+	}
+	
+	@Override
+	public void createUser(String username, String email, String name, String surname, String hashedPassword, String salt) throws UserAlreadyRegisteredException {
+		if (this.snapshot != null && this.snapshot.containsUser(username)) {
+			throw new UserAlreadyRegisteredException();
+		}
+		
+		if (this.users.putIfAbsent(username, new StoredUser(username, email, name, surname, hashedPassword, salt)) != null) {
+			throw new UserAlreadyRegisteredException();
+		}
+	}
+	
+	@Override
+	public void touchLastLogin(String username, Date date) {
+		StoredUser user = storedUser(username);
+		if (user != null) {
+			user.lastLogin = date;
+		}
+	}
+	
+	@Override
+	public String getStatistics() {
+		return "Memoria: " + this.parkingLots.size() + " parcheggi, " + this.cars.size() + " auto (" + this.carLocations.size() + " parcheggiate), " + this.users.size() + " utenti in memoria" +
+				((this.snapshot == null) ? "" : " (" + this.snapshot.getUserCount() + " nello snapshot)") + "\n" +
+				"Assegnazioni: " + this.assignments.get() + ", consegne: " + this.parkings.get();
+	}
+	
+	@Override
+	public void close() { }
+	
+	/**
+	 * Restituisce i dati di un utente, leggendoli dallo snapshot se non sono ancora presenti in memoria.
+	 */
+	private StoredUser storedUser(String username) {
+		StoredUser user = this.users.get(username);
+		
+		if (user == null && this.snapshot != null) {
+			User loaded = this.snapshot.findUser(username, this.cars);
+			
+			if (loaded != null) {
+				StoredUser previous = this.users.putIfAbsent(username, user = new StoredUser(loaded));
+				if (previous != null) user = previous;
+			}
+		}
+		
+		return user;
+	}
+	
+	/**
+	 * I dati di un utente registrato: ogni lettura restituisce una nuova istanza di User, come avviene con il Database.
+	 */
+	private class StoredUser {
+	
+		final String username;
+		final String email;
+		final String name;
+		final String surname;
+		final String hashedPassword;
+		final String salt;
+		
+		volatile Integer currentCar = null;
+		volatile Date lastLogin = null;
+		
+		StoredUser(String username, String email, String name, String surname, String hashedPassword, String salt) {
+			this.username = username;
+			this.email = email;
+			this.name = name;
+			this.surname = surname;
+			this.hashedPassword = hashedPassword;
+			this.salt = salt;
+		}
+		
+		StoredUser(User user) {
+			this(user.getUsername(), user.getEmail(), user.getName(), user.getSurname(), user.getHashedPassword(), user.getSaltPassword());
+			
+			if (user.getLoadedCar() != null) {
+				this.currentCar = user.getLoadedCar().getId();
+			}
+		}
+		
+		User toUser() {
+			User user = new User(this.username, this.email, this.name, this.surname, this.hashedPassword, this.salt);
+			
+			Integer carId = this.currentCar;
+			if (carId != null) {
+				user.setLoadedCar(cars.get(carId));
+			}
+			
+			return user;
+		}
+	
+	}
+
+}
@@ -0,0 +1,32 @@
+package phoenix.db;
+
+/**
+ * Rappresenta un aggiornamento da eseguire sul Database: una query con i relativi parametri.
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class Mutation {
+
+	private final String query;
+	private final Object[] variables;
+	
+	public Mutation(String query, Object... variables) {
+		this.query = query;
+		this.variables = variables;
+	}
+	
+	public String getQuery() {
+		return this.query;
+	}
+	
+	public Object[] getVariables() {
+		return this.variables;
+	}
+	
+	@Override
+	public String toString() {
+		return this.query;
+	}
+
+}
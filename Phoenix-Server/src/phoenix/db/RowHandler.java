@@ -0,0 +1,19 @@
+package phoenix.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Riceve, una alla volta, le righe restituite da una query eseguita con DbLayer.query.
+ * 
+ * @discussion Il ResultSet passato ad handle è posizionato sulla riga corrente e non deve essere conservato, né chiuso:
+ * il cursore viene chiuso dal DbLayer al termine della lettura.
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public interface RowHandler {
+
+	public void handle(ResultSet row) throws SQLException;
+
+}
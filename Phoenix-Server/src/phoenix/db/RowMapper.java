@@ -0,0 +1,17 @@
+package phoenix.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Trasforma la riga corrente di un ResultSet in un oggetto.
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ * @param <T> Il tipo di oggetto prodotto per ogni riga
+ */
+public interface RowMapper<T> {
+
+	public T map(ResultSet row) throws SQLException;
+
+}
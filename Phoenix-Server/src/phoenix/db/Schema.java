@@ -0,0 +1,190 @@
+package phoenix.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Gestisce la struttura del Database: crea le tabelle, gli indici e ne aggiorna la versione.
+ * 
+ * @discussion La versione dello schema viene salvata in PRAGMA user_version. All'avvio vengono eseguite, in ordine,
+ * tutte le migrazioni con versione successiva a quella registrata, ciascuna all'interno di una transazione.
+ * 
+ * La prima migrazione crea le tabelle ed i dati iniziali a partire da Init.sql; se il Database esiste già (ad esempio perché
+ * creato a mano con lo stesso script), la migrazione viene saltata e viene soltanto aggiornata la versione.
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class Schema {
+
+	/**
+	 * Le migrazioni dello schema: la migrazione in posizione i porta il Database alla versione i+1.
+	 */
+	private static final String[][] Migrations = {
+		null, // versione 1: Init.sql
+		{
+			// Indice di copertura per il caricamento delle auto presenti in un parcheggio.
+			"CREATE INDEX IF NOT EXISTS car_currentParkingLot ON car (currentParkingLot, id, name, color, plate, type)"
+		}
+	};
+	
+	/**
+	 * Le query eseguite ad ogni richiesta, di cui controllare il piano di esecuzione.
+	 */
+	public static final List<String> HotQueries = Arrays.asList(
+		FleetLoader.ParkedCars,
+		SqliteStorageEngine.SelectUser,
+		SqliteStorageEngine.CarLeavesParkingLot,
+		SqliteStorageEngine.CarEntersParkingLot,
+		SqliteStorageEngine.UserTakesCar,
+		SqliteStorageEngine.UserReleasesCar,
+		SqliteStorageEngine.UserLastLogin
+	);
+	
+	/**
+	 * Restituisce la versione più recente dello schema.
+	 */
+	public static int getLatestVersion() {
+		return Migrations.length;
+	}
+	
+	/**
+	 * Porta il Database all'ultima versione dello schema.
+	 * 
+	 * @param connection: Una connessione in scrittura al Database
+	 * @return La versione dello schema al termine della migrazione
+	 * @throws SQLException
+	 */
+	static int migrate(Connection connection) throws SQLException {
+		int version = readVersion(connection);
+		
+		for (int target = version + 1; target <= Migrations.length; target++) {
+			List<String> statements;
+			
+			if (target == 1) {
+				statements = tableExists(connection, "car") ? new ArrayList<String>() : loadInitScript();
+			}
+			else {
+				statements = Arrays.asList(Migrations[target - 1]);
+			}
+			
+			connection.setAutoCommit(false);
+			Statement statement = connection.createStatement();
+			
+			try {
+				for (String sql : statements) {
+					statement.executeUpdate(sql);
+				}
+				
+				statement.executeUpdate("PRAGMA user_version = " + target);
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				statement.close();
+				connection.setAutoCommit(true);
+			}
+			
+			System.out.println("INFO: schema del Database aggiornato alla versione " + target + ".");
+		}
+		
+		return Math.max(version, Migrations.length);
+	}
+	
+	/**
+	 * Restituisce il piano di esecuzione di una query, così come riportato da EXPLAIN QUERY PLAN.
+	 * 
+	 * @param connection: Una connessione al Database
+	 * @param query: La query da analizzare (gli eventuali parametri vengono considerati NULL)
+	 * @return Una riga per ogni passo del piano
+	 * @throws SQLException
+	 */
+	static List<String> explain(Connection connection, String query) throws SQLException {
+		ArrayList<String> plan = new ArrayList<String>();
+		Statement statement = connection.createStatement();
+		
+		try {
+			ResultSet set = statement.executeQuery("EXPLAIN QUERY PLAN " + query);
+			while (set.next()) {
+				plan.add(set.getString("detail"));
+			}
+			set.close();
+		} finally {
+			statement.close();
+		}
+		
+		return plan;
+	}
+	
+	/**
+	 * Controlla se un passo del piano di esecuzione legge un'intera tabella, senza usare indici.
+	 */
+	public static boolean isFullScan(String step) {
+		return step.startsWith("SCAN") && !step.contains("INDEX");
+	}
+	
+	private static int readVersion(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		
+		try {
+			ResultSet set = statement.executeQuery("PRAGMA user_version");
+			int version = set.next() ? set.getInt(1) : 0;
+			set.close();
+			return version;
+		} finally {
+			statement.close();
+		}
+	}
+	
+	private static boolean tableExists(Connection connection, String table) throws SQLException {
+		Statement statement = connection.createStatement();
+		
+		try {
+			ResultSet set = statement.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name = '" + table + "' COLLATE NOCASE");
+			boolean exists = set.next();
+			set.close();
+			return exists;
+		} finally {
+			statement.close();
+		}
+	}
+	
+	/**
+	 * Legge Init.sql dalle risorse e lo divide nelle singole istruzioni.
+	 */
+	private static List<String> loadInitScript() throws SQLException {
+		InputStream stream = Schema.class.getResourceAsStream("Init.sql");
+		if (stream == null) {
+			throw new SQLException("Impossibile trovare Init.sql tra le risorse dell'applicazione.");
+		}
+		
+		ArrayList<String> statements = new ArrayList<String>();
+		
+		Scanner scanner = new Scanner(stream, StandardCharsets.UTF_8.name()).useDelimiter(";");
+		try {
+			while (scanner.hasNext()) {
+				String sql = scanner.next().trim();
+				if (!sql.isEmpty()) statements.add(sql);
+			}
+		} finally {
+			scanner.close();
+			
+			try {
+				stream.close();
+			} catch (IOException e) { }
+		}
+		
+		return statements;
+	}
+
+}
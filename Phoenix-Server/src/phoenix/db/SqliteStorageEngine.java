@@ -0,0 +1,204 @@
+package phoenix.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import phoenix.base.Car;
+import phoenix.base.CarType;
+import phoenix.base.ParkingLot;
+import phoenix.base.User;
+import phoenix.exceptions.UserAlreadyRegisteredException;
+
+/**
+ * Implementazione di StorageEngine basata sul Database SQLite.
+ * 
+ * @discussion Contiene tutte le query usate dal Server. Le letture vengono eseguite tramite DbLayer, mentre le operazioni
+ * che riflettono lo stato della flotta vengono accodate nella WriteBehindQueue e scritte in differita.
+ * All'avvio porta il Database all'ultima versione dello schema e segnala le query frequenti che leggono un'intera tabella.
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class SqliteStorageEngine implements StorageEngine {
+
+	static final String SelectTypes = "SELECT id, name FROM \"Type\"";
+	
+	static final String SelectCars = "SELECT car.id AS carId, car.name AS carName, color, plate, type.id AS typeId, type.name AS typeName FROM \"Car\" LEFT JOIN \"Type\" ON \"Type\".id = \"Car\".type";
+	
+	static final String SelectUsers = "SELECT user.id AS userId, user.name AS usrName, surname, username, email, password, salt, car.id AS carId, car.name AS carName, car.color AS color, car.plate AS plate, type.id AS typeId, type.name AS typeName FROM \"User\" LEFT JOIN \"Car\" ON \"User\".currentCar = \"Car\".id  LEFT JOIN \"Type\" ON \"Type\".id = \"Car\".type";
+	
+	static final String SelectUser = SelectUsers + " WHERE username = ?";
+	
+	static final String CarLeavesParkingLot = "UPDATE \"Car\" SET currentParkingLot = NULL WHERE id = ?";
+	
+	static final String CarEntersParkingLot = "UPDATE \"Car\" SET currentParkingLot = ? WHERE id = ?";
+	
+	static final String UserTakesCar = "UPDATE \"User\" SET currentCar = ? WHERE username = ?";
+	
+	static final String UserReleasesCar = "UPDATE \"User\" SET currentCar = NULL WHERE username = ?";
+	
+	static final String UserLastLogin = "UPDATE \"User\" SET lastLogin = ? WHERE username = ?";
+	
+	static final String InsertUser = "INSERT INTO \"User\" (username, name, surname, email, password, salt) VALUES (?, ?, ?, ?, ?, ?)";
+	
+	private final DbLayer dbLayer;
+	private final WriteBehindQueue writes;
+	
+	/**
+	 * Apre il Database predefinito, con il numero di connessioni in lettura specificato.
+	 * 
+	 * @param readersNumber: Il numero di connessioni in lettura (vedi DbLayer)
+	 * @throws ClassNotFoundException
+	 * @throws SQLException
+	 */
+	public SqliteStorageEngine(int readersNumber) throws ClassNotFoundException, SQLException {
+		this(new DbLayer(readersNumber));
+	}
+	
+	public SqliteStorageEngine(DbLayer layer) throws SQLException {
+		this.dbLayer = layer;
+		this.dbLayer.migrate();
+		
+		for (Map.Entry<String, List<String>> plan : this.dbLayer.explainHotQueries().entrySet()) {
+			for (String step : plan.getValue()) {
+				if (Schema.isFullScan(step)) {
+					System.out.println("ATTENZIONE: la query \"" + plan.getKey() + "\" legge l'intera tabella (" + step + ").");
+				}
+			}
+		}
+		
+		this.writes = new WriteBehindQueue(this.dbLayer);
+	}
+	
+	@Override
+	public ConcurrentHashMap<Integer, ParkingLot> loadFleet() throws StorageException {
+		try {
+			return new FleetLoader(this.dbLayer).loadParkingLots();
+		} catch (SQLException e) {
+			throw new StorageException("Impossibile caricare i parcheggi.", e);
+		}
+	}
+	
+	@Override
+	public HashMap<Integer, CarType> loadTypes() throws StorageException {
+		HashMap<Integer, CarType> types = new HashMap<Integer, CarType>();
+		
+		try {
+			this.dbLayer.query(SelectTypes, row -> types.put(row.getInt("id"), new CarType(row.getInt("id"), row.getString("name"))));
+		} catch (SQLException e) {
+			throw new StorageException("Impossibile caricare le categorie.", e);
+		}
+		
+		return types;
+	}
+	
+	@Override
+	public HashMap<Integer, Car> loadCars() throws StorageException {
+		HashMap<Integer, Car> cars = new HashMap<Integer, Car>();
+		
+		try {
+			this.dbLayer.query(SelectCars, row -> cars.put(row.getInt("carId"), FleetLoader.readCar(row)));
+		} catch (SQLException e) {
+			throw new StorageException("Impossibile caricare le auto.", e);
+		}
+		
+		return cars;
+	}
+	
+	@Override
+	public HashMap<String, User> loadUsers() throws StorageException {
+		HashMap<String, User> users = new HashMap<String, User>();
+		
+		try {
+			this.dbLayer.query(SelectUsers, row -> users.put(row.getString("username"), readUser(row)));
+		} catch (SQLException e) {
+			throw new StorageException("Impossibile caricare gli utenti.", e);
+		}
+		
+		return users;
+	}
+	
+	@Override
+	public User findUser(String username) throws StorageException {
+		try {
+			List<User> users = this.dbLayer.queryList(SelectUser, SqliteStorageEngine::readUser, username);
+			return users.isEmpty() ? null : users.get(0);
+		} catch (SQLException e) {
+			throw new StorageException("Impossibile caricare l'utente " + username + ".", e);
+		}
+	}
+	
+	@Override
+	public void assignCar(Car car, String username) {
+		this.writes.enqueue("assegnazione di " + car + " a " + username,
+				new Mutation(CarLeavesParkingLot, car.getId()),
+				new Mutation(UserTakesCar, car.getId(), username));
+	}
+	
+	@Override
+	public void parkCar(Car car, Integer parkingLotId, String username) {
+		this.writes.enqueue("consegna di " + car + " da parte di " + username,
+				new Mutation(CarEntersParkingLot, parkingLotId, car.getId()),
+				new Mutation(UserReleasesCar, username));
+	}
+	
+	@Override
+	public void createUser(String username, String email, String name, String surname, String hashedPassword, String salt) throws UserAlreadyRegisteredException, StorageException {
+		try {
+			this.dbLayer.executeUpdate(InsertUser, username, name, surname, email, hashedPassword, salt);
+		} catch (SQLException e) {
+			if (e.getErrorCode() == 19) {
+				throw new UserAlreadyRegisteredException();
+			}
+			
+			throw new StorageException("Impossibile registrare l'utente " + username + ".", e);
+		}
+	}
+	
+	@Override
+	public void touchLastLogin(String username, Date date) {
+		this.writes.enqueue("ultimo accesso di " + username, new Mutation(UserLastLogin, date, username));
+	}
+	
+	@Override
+	public String getStatistics() {
+		String statistics = this.dbLayer.getStatistics() + "\n" + this.writes.toString();
+		
+		try {
+			for (Map.Entry<String, List<String>> plan : this.dbLayer.explainHotQueries().entrySet()) {
+				statistics += "\n\n" + plan.getKey();
+				
+				for (String step : plan.getValue()) {
+					statistics += "\n\t" + step + (Schema.isFullScan(step) ? " <-- lettura completa della tabella" : "");
+				}
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			System.out.println("ERRORE: non è stato possibile ottenere i piani di esecuzione delle query.");
+		}
+		
+		return statistics;
+	}
+	
+	@Override
+	public void close() {
+		this.writes.close();
+		this.dbLayer.close();
+	}
+	
+	private static User readUser(ResultSet row) throws SQLException {
+		User user = new User(row.getString("username"), row.getString("email"), row.getString("usrName"), row.getString("surname"), row.getString("password"), row.getString("salt"));
+		
+		if (row.getString("carId") != null) {
+			user.setLoadedCar(FleetLoader.readCar(row));
+		}
+		
+		return user;
+	}
+
+}
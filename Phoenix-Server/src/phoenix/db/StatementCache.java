@@ -0,0 +1,140 @@
+package phoenix.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Mantiene una cache limitata di PreparedStatement, indicizzati tramite il testo SQL.
+ * 
+ * Ogni statement viene prelevato dalla cache prima dell'uso e restituito al termine: in questo modo due thread
+ * non possono mai eseguire contemporaneamente lo stesso PreparedStatement. Quando la cache supera la capienza
+ * massima, lo statement usato meno di recente viene chiuso ed eliminato.
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class StatementCache {
+
+	private final Connection connection;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+	
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	
+	public StatementCache(Connection connection, final int capacity) {
+		this.connection = connection;
+		this.statements = new LinkedHashMap<String, PreparedStatement>(capacity, 0.75f, true) {
+		
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > capacity) {
+					evictions++;
+					closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		
+		};
+	}
+	
+	/**
+	 * Preleva dalla cache uno statement per la query specificata, preparandone uno nuovo se non è disponibile.
+	 * 
+	 * @param query: Il testo SQL dello statement
+	 * @return Un PreparedStatement ad uso esclusivo del chiamante, da restituire con release
+	 * @throws SQLException
+	 */
+	public PreparedStatement acquire(String query) throws SQLException {
+		synchronized (this) {
+			PreparedStatement statement = this.statements.remove(query);
+			
+			if (statement != null) {
+				this.hits++;
+				return statement;
+			}
+			
+			this.misses++;
+		}
+		
+		return this.connection.prepareStatement(query);
+	}
+	
+	/**
+	 * Restituisce alla cache uno statement ottenuto con acquire.
+	 * 
+	 * @discussion Se nel frattempo un altro thread ha già restituito uno statement per la stessa query, quello in eccesso viene chiuso.
+	 * 
+	 * @param query: Il testo SQL dello statement
+	 * @param statement: Lo statement da restituire
+	 */
+	public void release(String query, PreparedStatement statement) {
+		try {
+			statement.clearParameters();
+		} catch (SQLException e) {
+			closeQuietly(statement);
+			return;
+		}
+		
+		PreparedStatement previous;
+		synchronized (this) {
+			previous = this.statements.put(query, statement);
+		}
+		
+		if (previous != null && previous != statement) {
+			closeQuietly(previous);
+		}
+	}
+	
+	/**
+	 * Restituisce la connessione su cui vengono preparati gli statement.
+	 */
+	public Connection getConnection() {
+		return this.connection;
+	}
+	
+	public synchronized long getHits() {
+		return this.hits;
+	}
+	
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+	
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+	
+	public synchronized int size() {
+		return this.statements.size();
+	}
+	
+	/**
+	 * Chiude tutti gli statement attualmente presenti nella cache.
+	 */
+	public synchronized void close() {
+		for (PreparedStatement statement : this.statements.values()) {
+			closeQuietly(statement);
+		}
+		
+		this.statements.clear();
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "Statement in cache: " + this.statements.size() + " (hit: " + this.hits + ", miss: " + this.misses + ", rimossi: " + this.evictions + ")";
+	}
+	
+	private static void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) { }
+	}
+
+}
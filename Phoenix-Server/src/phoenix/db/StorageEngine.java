@@ -0,0 +1,117 @@
+package phoenix.db;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import phoenix.base.Car;
+import phoenix.base.CarType;
+import phoenix.base.ParkingLot;
+import phoenix.base.User;
+import phoenix.exceptions.UserAlreadyRegisteredException;
+
+/**
+ * Rappresenta il sistema di memorizzazione usato dal Server.
+ * 
+ * @discussion Il Server, i Callable ed i Runnable non conoscono il formato in cui i dati vengono salvati: usano soltanto
+ * le operazioni definite da questa interfaccia. Le operazioni che riflettono lo stato della flotta (assignCar, parkCar, touchLastLogin)
+ * possono essere applicate in differita; eventuali errori vengono segnalati direttamente dall'implementazione.
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public interface StorageEngine {
+
+	/**
+	 * Carica tutti i parcheggi, con le auto attualmente parcheggiate in ciascuno di essi.
+	 * 
+	 * @return Una ConcurrentHashMap che associa ad ogni ID il relativo parcheggio
+	 * @throws StorageException
+	 */
+	public ConcurrentHashMap<Integer, ParkingLot> loadFleet() throws StorageException;
+	
+	/**
+	 * Carica l'elenco dei tipi di auto.
+	 * 
+	 * @return Un'HashMap che associa ad ogni ID il relativo tipo
+	 * @throws StorageException
+	 */
+	public HashMap<Integer, CarType> loadTypes() throws StorageException;
+	
+	/**
+	 * Carica l'intero parco auto, indipendentemente dal parcheggio in cui si trova ciascuna auto.
+	 * 
+	 * @return Un'HashMap che associa ad ogni ID la relativa auto
+	 * @throws StorageException
+	 */
+	public HashMap<Integer, Car> loadCars() throws StorageException;
+	
+	/**
+	 * Carica tutti gli utenti registrati, con l'eventuale auto in uso.
+	 * 
+	 * @return Un'HashMap che associa ad ogni username il relativo utente
+	 * @throws StorageException
+	 */
+	public HashMap<String, User> loadUsers() throws StorageException;
+	
+	/**
+	 * Carica un singolo utente, con l'eventuale auto in uso.
+	 * 
+	 * @param username: L'username dell'utente da caricare
+	 * @return Una nuova istanza di User, oppure null se l'utente non esiste
+	 * @throws StorageException
+	 */
+	public User findUser(String username) throws StorageException;
+	
+	/**
+	 * Registra che un'auto è stata prelevata da un parcheggio ed assegnata ad un utente.
+	 * 
+	 * @param car: L'auto prelevata
+	 * @param username: L'username dell'utente a cui è stata assegnata l'auto
+	 */
+	public void assignCar(Car car, String username);
+	
+	/**
+	 * Registra che un'auto è stata riconsegnata in un parcheggio dall'utente che la stava usando.
+	 * 
+	 * @param car: L'auto riconsegnata
+	 * @param parkingLotId: L'ID del parcheggio in cui è stata riconsegnata l'auto
+	 * @param username: L'username dell'utente che ha riconsegnato l'auto
+	 */
+	public void parkCar(Car car, Integer parkingLotId, String username);
+	
+	/**
+	 * Registra un nuovo utente.
+	 * 
+	 * @param username: L'username dell'utente
+	 * @param email: L'email dell'utente
+	 * @param name: Il nome dell'utente
+	 * @param surname: Il cognome dell'utente
+	 * @param hashedPassword: L'hash della password
+	 * @param salt: Il salt usato per generare l'hash
+	 * @throws UserAlreadyRegisteredException in caso di utente già registrato
+	 * @throws StorageException
+	 */
+	public void createUser(String username, String email, String name, String surname, String hashedPassword, String salt) throws UserAlreadyRegisteredException, StorageException;
+	
+	/**
+	 * Aggiorna la data dell'ultimo accesso di un utente.
+	 * 
+	 * @param username: L'username dell'utente
+	 * @param date: La data dell'accesso
+	 */
+	public void touchLastLogin(String username, Date date);
+	
+	/**
+	 * Restituisce un riepilogo sul funzionamento interno del sistema di memorizzazione.
+	 * 
+	 * @return Una stringa con una riga per ogni statistica disponibile
+	 */
+	public String getStatistics();
+	
+	/**
+	 * Completa le operazioni ancora in sospeso e rilascia le risorse del sistema di memorizzazione.
+	 */
+	public void close();
+
+}
@@ -0,0 +1,21 @@
+package phoenix.db;
+
+/**
+ * Segnala un errore durante la lettura o la scrittura dei dati da parte di uno StorageEngine.
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class StorageException extends Exception {
+
+	private static final long serialVersionUID = 4809337181205733910L;
+	
+	public StorageException(String message, Throwable cause) {
+		super(message, cause);
+	}
+	
+	public StorageException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,190 @@
+package phoenix.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raccoglie gli aggiornamenti al Database prodotti dai thread di lavoro e li scrive in differita, raggruppandoli in transazioni.
+ * 
+ * @discussion Ogni chiamata ad enqueue rappresenta un gruppo di aggiornamenti che deve essere applicato in modo atomico
+ * (ad esempio, lo spostamento di un'auto dal parcheggio all'utente). Un thread dedicato preleva i gruppi in attesa
+ * e li scrive tutti insieme in un'unica transazione (group commit), così che i thread di lavoro non debbano attendere il disco.
+ * Se la transazione fallisce, i gruppi vengono riscritti uno per uno, in modo che un singolo aggiornamento non valido non blocchi gli altri.
+ * 
+ * La coda è limitata: quando è piena, enqueue attende che si liberi spazio.
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ */
+public class WriteBehindQueue {
+
+	/**
+	 * Numero massimo di gruppi di aggiornamenti in attesa di scrittura.
+	 */
+	private static int QueueCapacity = 1024;
+	
+	/**
+	 * Numero massimo di gruppi scritti all'interno di una singola transazione.
+	 */
+	private static int MaxBatchSize = 64;
+	
+	private final DbLayer dbLayer;
+	private final ArrayBlockingQueue<PendingWrite> queue;
+	private final Thread flusher;
+	
+	private volatile boolean running = true;
+	
+	private long batches = 0;
+	private long groups = 0;
+	private long failures = 0;
+	private long totalLatency = 0;
+	private long maxLatency = 0;
+	private long lastLatency = 0;
+	
+	public WriteBehindQueue(DbLayer layer) {
+		this.dbLayer = layer;
+		this.queue = new ArrayBlockingQueue<PendingWrite>(QueueCapacity);
+		
+		this.flusher = new Thread(new Runnable() {
+		
+			@Override
+			public void run() {
+				flushLoop();
+			}
+		
+		}, "Phoenix-WriteBehind");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+	
+	/**
+	 * Accoda un gruppo di aggiornamenti da scrivere in modo atomico.
+	 * 
+	 * @param description: Una descrizione dell'operazione, usata nei messaggi di errore
+	 * @param mutations: Gli aggiornamenti che compongono il gruppo
+	 */
+	public void enqueue(String description, Mutation... mutations) {
+		if (!this.running) {
+			throw new IllegalStateException("La coda di scrittura è stata chiusa.");
+		}
+		
+		PendingWrite write = new PendingWrite(description, mutations);
+		
+		try {
+			this.queue.put(write);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.out.println("\n\nERRORE: non è stato possibile accodare l'aggiornamento (" + description + ").");
+		}
+	}
+	
+	/**
+	 * Restituisce il numero di gruppi di aggiornamenti attualmente in attesa di scrittura.
+	 */
+	public int size() {
+		return this.queue.size();
+	}
+	
+	/**
+	 * Smette di accettare nuovi aggiornamenti, scrive quelli ancora in coda ed attende la terminazione del thread di scrittura.
+	 */
+	public void close() {
+		this.running = false;
+		this.flusher.interrupt();
+		
+		try {
+			this.flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	@Override
+	public synchronized String toString() {
+		long averageLatency = (this.batches == 0) ? 0 : this.totalLatency / this.batches;
+		
+		return "Scritture differite: " + this.groups + " gruppi in " + this.batches + " transazioni (in coda: " + this.queue.size() + ", falliti: " + this.failures + ")" +
+				" - latenza ms: ultima " + this.lastLatency + ", media " + averageLatency + ", massima " + this.maxLatency;
+	}
+	
+	private void flushLoop() {
+		ArrayList<PendingWrite> batch = new ArrayList<PendingWrite>(MaxBatchSize);
+		
+		while (this.running || !this.queue.isEmpty()) {
+			try {
+				PendingWrite first = this.queue.poll(1, TimeUnit.SECONDS);
+				if (first == null) continue;
+				
+				batch.add(first);
+			} catch (InterruptedException e) {
+				if (this.queue.isEmpty()) continue;
+			}
+			
+			this.queue.drainTo(batch, MaxBatchSize - batch.size());
+			flush(batch);
+			batch.clear();
+		}
+	}
+	
+	private void flush(List<PendingWrite> batch) {
+		ArrayList<Mutation> mutations = new ArrayList<Mutation>();
+		for (PendingWrite write : batch) {
+			mutations.addAll(Arrays.asList(write.mutations));
+		}
+		
+		try {
+			this.dbLayer.executeTransaction(mutations);
+		} catch (SQLException e) {
+			// Riprova i gruppi uno per uno, per isolare quello che ha causato l'errore.
+			for (PendingWrite write : batch) {
+				try {
+					this.dbLayer.executeTransaction(Arrays.asList(write.mutations));
+				} catch (SQLException writeException) {
+					synchronized (this) {
+						this.failures++;
+					}
+					
+					if (writeException.getErrorCode() == 19) {
+						System.out.println("\n\nERRORE: non è stato possibile completare la richiesta (" + write.description + ") a causa di un problema durante l'aggiornamento del Database.");
+					}
+					else {
+						writeException.printStackTrace();
+					}
+				}
+			}
+		}
+		
+		long now = System.nanoTime();
+		long latency = TimeUnit.NANOSECONDS.toMillis(now - batch.get(0).enqueuedAt);
+		
+		synchronized (this) {
+			this.batches++;
+			this.groups += batch.size();
+			this.totalLatency += latency;
+			this.lastLatency = latency;
+			this.maxLatency = Math.max(this.maxLatency, latency);
+		}
+	}
+	
+	/**
+	 * Un gruppo di aggiornamenti in attesa di scrittura.
+	 */
+	private static class PendingWrite {
+	
+		final String description;
+		final Mutation[] mutations;
+		final long enqueuedAt;
+		
+		PendingWrite(String description, Mutation[] mutations) {
+			this.description = description;
+			this.mutations = mutations;
+			this.enqueuedAt = System.nanoTime();
+		}
+	
+	}
+
+}
@@ -0,0 +1,207 @@
+package phoenix.fleet;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Risolve il problema dell'assegnamento: date n righe (le richieste) ed m colonne (le auto disponibili) con il costo
+ * di ciascuna coppia, assegna ad ogni riga al più una colonna diversa, minimizzando il costo totale.
+ * 
+ * @discussion optimal trova l'assegnamento di costo minimo tra quelli con il massimo numero di coppie
+ * (metodo ungherese, O(n² m)); nella matrice dei costi le coppie non ammesse hanno costo Double.POSITIVE_INFINITY.
+ * greedy riceve soltanto l'elenco delle coppie ammesse e le assegna in ordine di costo crescente (O(k log k) per k coppie).
+ * Entrambi accettano colonne con una capacità, cioè assegnabili a più righe.
+ * 
+ * @author Alessio Moiso
+ * @version 1.1
+ */
+public class Assignment {
+
+	/**
+	 * Assegna le coppie in ordine di costo crescente, saltando quelle con una riga già assegnata o una colonna già piena.
+	 * 
+	 * @discussion Riceve soltanto le coppie ammesse: tempo e memoria dipendono dal loro numero e non dal prodotto tra righe e colonne.
+	 * 
+	 * @param rows: Il numero di righe
+	 * @param capacities: Per ogni colonna, il numero massimo di righe a cui può essere assegnata
+	 * @param pairs: Le coppie ammesse, che vengono ordinate per costo
+	 * @return Per ogni riga, la colonna assegnata oppure -1
+	 */
+	public static int[] greedy(int rows, int[] capacities, List<Pair> pairs) {
+		int[] assignment = new int[rows];
+		Arrays.fill(assignment, -1);
+		
+		int[] remaining = capacities.clone();
+		pairs.sort((first, second) -> Double.compare(first.cost, second.cost));
+		
+		for (Pair pair : pairs) {
+			if (assignment[pair.row] < 0 && remaining[pair.column] > 0) {
+				assignment[pair.row] = pair.column;
+				remaining[pair.column]--;
+			}
+		}
+		
+		return assignment;
+	}
+	
+	/**
+	 * Come optimal(double[][]), per colonne che possono essere assegnate a più righe.
+	 * 
+	 * @discussion Ogni colonna viene ripetuta tante volte quanto la sua capacità nella matrice dei costi, che ha quindi
+	 * tante colonne quanto la somma delle capacità.
+	 * 
+	 * @param rows: Il numero di righe
+	 * @param capacities: Per ogni colonna, il numero massimo di righe a cui può essere assegnata
+	 * @param pairs: Le coppie ammesse
+	 * @return Per ogni riga, la colonna assegnata oppure -1
+	 */
+	public static int[] optimal(int rows, int[] capacities, List<Pair> pairs) {
+		int[] firstSlot = new int[capacities.length + 1];
+		for (int column = 0; column < capacities.length; column++) {
+			firstSlot[column + 1] = firstSlot[column] + capacities[column];
+		}
+		
+		int[] columnOfSlot = new int[firstSlot[capacities.length]];
+		for (int column = 0; column < capacities.length; column++) {
+			Arrays.fill(columnOfSlot, firstSlot[column], firstSlot[column + 1], column);
+		}
+		
+		double[][] cost = new double[rows][columnOfSlot.length];
+		for (double[] row : cost) {
+			Arrays.fill(row, Double.POSITIVE_INFINITY);
+		}
+		
+		for (Pair pair : pairs) {
+			for (int slot = firstSlot[pair.column]; slot < firstSlot[pair.column + 1]; slot++) {
+				cost[pair.row][slot] = Math.min(cost[pair.row][slot], pair.cost);
+			}
+		}
+		
+		int[] assignment = optimal(cost);
+		for (int row = 0; row < rows; row++) {
+			if (assignment[row] >= 0) assignment[row] = columnOfSlot[assignment[row]];
+		}
+		
+		return assignment;
+	}
+	
+	/**
+	 * Trova l'assegnamento di costo totale minimo tra quelli con il massimo numero di coppie ammesse.
+	 * 
+	 * @param cost: La matrice dei costi, con una riga per ogni richiesta ed una colonna per ogni auto
+	 * @return Per ogni riga, la colonna assegnata oppure -1
+	 */
+	public static int[] optimal(double[][] cost) {
+		int rows = cost.length;
+		int[] assignment = new int[rows];
+		Arrays.fill(assignment, -1);
+		if (rows == 0) return assignment;
+		
+		int realColumns = cost[0].length;
+		
+		// Le coppie non ammesse (e le colonne fittizie, che rendono le colonne almeno quante le righe) costano più
+		// di qualunque assegnamento composto solo da coppie ammesse.
+		double unassigned = 1;
+		for (double[] row : cost) {
+			for (double value : row) {
+				if (value != Double.POSITIVE_INFINITY) unassigned += value;
+			}
+		}
+		
+		int columns = Math.max(rows, realColumns);
+		double[] u = new double[rows + 1];
+		double[] v = new double[columns + 1];
+		int[] rowOfColumn = new int[columns + 1];
+		int[] way = new int[columns + 1];
+		
+		for (int row = 1; row <= rows; row++) {
+			rowOfColumn[0] = row;
+			int column = 0;
+			double[] minimum = new double[columns + 1];
+			boolean[] used = new boolean[columns + 1];
+			Arrays.fill(minimum, Double.POSITIVE_INFINITY);
+			
+			do {
+				used[column] = true;
+				int currentRow = rowOfColumn[column];
+				double delta = Double.POSITIVE_INFINITY;
+				int nextColumn = 0;
+				
+				for (int j = 1; j <= columns; j++) {
+					if (used[j]) continue;
+					
+					double value = (j <= realColumns && cost[currentRow - 1][j - 1] != Double.POSITIVE_INFINITY) ? cost[currentRow - 1][j - 1] : unassigned;
+					double reduced = value - u[currentRow] - v[j];
+					
+					if (reduced < minimum[j]) {
+						minimum[j] = reduced;
+						way[j] = column;
+					}
+					
+					if (minimum[j] < delta) {
+						delta = minimum[j];
+						nextColumn = j;
+					}
+				}
+				
+				for (int j = 0; j <= columns; j++) {
+					if (used[j]) {
+						u[rowOfColumn[j]] += delta;
+						v[j] -= delta;
+					}
+					else {
+						minimum[j] -= delta;
+					}
+				}
+				
+				column = nextColumn;
+			} while (rowOfColumn[column] != 0);
+			
+			do {
+				int previousColumn = way[column];
+				rowOfColumn[column] = rowOfColumn[previousColumn];
+				column = previousColumn;
+			} while (column != 0);
+		}
+		
+		for (int column = 1; column <= realColumns; column++) {
+			int row = rowOfColumn[column];
+			
+			if (row != 0 && cost[row - 1][column - 1] != Double.POSITIVE_INFINITY) {
+				assignment[row - 1] = column - 1;
+			}
+		}
+		
+		return assignment;
+	}
+
+	/**
+	 * Una coppia ammessa ed il suo costo.
+	 */
+	public static class Pair {
+	
+		final int row;
+		final int column;
+		final double cost;
+		
+		public Pair(int row, int column, double cost) {
+			this.row = row;
+			this.column = column;
+			this.cost = cost;
+		}
+		
+		public int getRow() {
+			return this.row;
+		}
+		
+		public int getColumn() {
+			return this.column;
+		}
+		
+		public double getCost() {
+			return this.cost;
+		}
+	
+	}
+
+}
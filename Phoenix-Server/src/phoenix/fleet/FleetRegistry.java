@@ -0,0 +1,142 @@
+package phoenix.fleet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import phoenix.base.Car;
+import phoenix.base.GPSPosition;
+import phoenix.base.ParkingLot;
+
+/**
+ * Contiene lo stato attuale della flotta: i parcheggi e le auto disponibili in ciascuno di essi.
+ * 
+ * @discussion Il registro viene caricato una sola volta all'avvio del Server ed è l'unica copia autorevole dello stato dei parcheggi:
+ * ricerche e consegne modificano direttamente questi ParkingLot e si limitano ad accodare gli aggiornamenti per il Database.
+ * Tutte le operazioni sono thread-safe; in particolare claim garantisce che la stessa auto non possa essere assegnata a due richieste.
+ * 
+ * I parcheggi sono indicizzati in una SpatialGrid, così che le ricerche per distanza calcolino la distanza esatta
+ * soltanto per i parcheggi che si trovano nelle celle vicine all'utente.
+ * 
+ * @author Alessio Moiso
+ * @version 1.3
+ */
+public class FleetRegistry {
+
+	/**
+	 * Precisione della distanza usata da nearestParkingLots (vedi GPSPosition.distanceTo): con un livello diverso da
+	 * ExactAccuracy l'ordine dei parcheggi ed il confine del raggio sono approssimati entro l'errore di quel livello.
+	 */
+	public static int NearestAccuracy = GPSPosition.ExactAccuracy;
+	
+	private final ConcurrentHashMap<Integer, ParkingLot> parkingLots;
+	private final SpatialGrid<ParkingLot> grid = new SpatialGrid<ParkingLot>();
+	
+	public FleetRegistry(ConcurrentHashMap<Integer, ParkingLot> parkingLots) {
+		this.parkingLots = parkingLots;
+		
+		for (ParkingLot parkingLot : parkingLots.values()) {
+			this.grid.add(parkingLot.getPosition(), parkingLot);
+		}
+	}
+	
+	/**
+	 * Restituisce tutti i parcheggi del registro.
+	 * 
+	 * @discussion La mappa restituita è quella usata dal registro: non deve essere modificata dal chiamante.
+	 */
+	public ConcurrentHashMap<Integer, ParkingLot> getParkingLots() {
+		return this.parkingLots;
+	}
+	
+	public ParkingLot getParkingLot(Integer id) {
+		return this.parkingLots.get(id);
+	}
+	
+	/**
+	 * Restituisce i parcheggi che si trovano entro il raggio specificato.
+	 * 
+	 * @param position: La posizione dell'utente
+	 * @param range: Il raggio di ricerca, in km
+	 * @return Un nuovo elenco con i parcheggi nel raggio
+	 */
+	public List<ParkingLot> parkingLotsInRange(GPSPosition position, Double range) {
+		ArrayList<ParkingLot> parkingLotsNearby = new ArrayList<ParkingLot>();
+		
+		for (ParkingLot parkingLot : this.grid.candidates(position, range)) {
+			if (parkingLot.isInRange(position, range)) {
+				parkingLotsNearby.add(parkingLot);
+			}
+		}
+		
+		return parkingLotsNearby;
+	}
+	
+	/**
+	 * Restituisce, in ordine di distanza crescente, i parcheggi più vicini entro il raggio specificato.
+	 * 
+	 * @discussion La distanza viene calcolata solo per i parcheggi che rispettano il filtro e che si trovano nelle celle
+	 * visitate prima di aver trovato i parcheggi richiesti (vedi SpatialGrid.nearest); i parcheggi certamente fuori dal raggio
+	 * vengono scartati prima, tramite GPSPosition.isWithin.
+	 * 
+	 * @param position: La posizione dell'utente
+	 * @param range: Il raggio di ricerca, in km
+	 * @param count: Il numero massimo di parcheggi da restituire
+	 * @param filter: I parcheggi da considerare (null per considerarli tutti)
+	 * @return Un nuovo elenco con al più count parcheggi, dal più vicino al più lontano
+	 */
+	public List<ParkingLot> nearestParkingLots(GPSPosition position, Double range, int count, Predicate<ParkingLot> filter) {
+		Predicate<ParkingLot> inRange = parkingLot -> {
+			int estimate = parkingLot.getPosition().estimateRange(position, range);
+			return estimate == GPSPosition.InsideEstimate || estimate == GPSPosition.Borderline;
+		};
+		
+		return this.grid.nearest(position, range, count, (filter == null) ? inRange : filter.and(inRange), parkingLot -> parkingLot.getPosition().distanceTo(position, NearestAccuracy));
+	}
+	
+	/**
+	 * Prova a prelevare un'auto da un parcheggio.
+	 * 
+	 * @param parkingLot: Il parcheggio in cui si trova l'auto
+	 * @param car: L'auto da prelevare
+	 * @return true se l'auto era disponibile ed è stata assegnata al chiamante, false se un altro thread l'ha prelevata prima
+	 */
+	public boolean claim(ParkingLot parkingLot, Car car) {
+		return parkingLot.remove(car);
+	}
+	
+	/**
+	 * Prova a prelevare da un parcheggio un'auto del tipo specificato.
+	 * 
+	 * @param parkingLot: Il parcheggio da cui prelevare l'auto
+	 * @param typeId: L'ID del tipo di auto richiesto
+	 * @return L'auto assegnata al chiamante, oppure null se nel parcheggio non vi sono auto disponibili di quel tipo
+	 */
+	public Car claim(ParkingLot parkingLot, Integer typeId) {
+		return parkingLot.pollCar(typeId);
+	}
+	
+	/**
+	 * Rende disponibile un'auto nel parcheggio specificato.
+	 * 
+	 * @param parkingLotId: L'ID del parcheggio
+	 * @param car: L'auto parcheggiata
+	 * @return Il parcheggio in cui è stata messa l'auto, oppure null se il parcheggio non esiste
+	 */
+	public ParkingLot park(Integer parkingLotId, Car car) {
+		ParkingLot parkingLot = this.parkingLots.get(parkingLotId);
+		
+		if (parkingLot != null) {
+			parkingLot.add(car);
+		}
+		
+		return parkingLot;
+	}
+	
+	@Override
+	public String toString() {
+		return "Registro: " + this.parkingLots.size() + " parcheggi\n" + this.grid.toString();
+	}
+
+}
@@ -0,0 +1,384 @@
+package phoenix.fleet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+import phoenix.base.GPSPosition;
+
+/**
+ * Indice spaziale a griglia uniforme: divide latitudine e longitudine in celle quadrate della stessa ampiezza (in gradi)
+ * ed associa ad ogni cella gli elementi che vi si trovano.
+ * 
+ * @discussion candidates restituisce gli elementi delle sole celle che intersecano il rettangolo che contiene il cerchio di ricerca.
+ * Il rettangolo è calcolato per eccesso (usando i raggi di curvatura minimi dell'ellissoide WGS84, vedi GPSPosition.MinKilometersPerLatitudeDegree), quindi nessun elemento
+ * entro il raggio viene mai escluso; il chiamante deve comunque controllare la distanza esatta di ogni candidato.
+ * Vicino ai poli, o a cavallo dell'antimeridiano, vengono restituiti tutti gli elementi.
+ * 
+ * nearest visita invece le celle occupate del rettangolo in ordine di distanza minima dal centro e mantiene i k elementi
+ * più vicini in una coda con priorità limitata: la ricerca termina non appena la distanza minima possibile della cella successiva
+ * supera quella del k-esimo elemento trovato, quindi la distanza viene calcolata solo per gli elementi delle celle visitate.
+ * 
+ * Se viene specificato un ordinamento, gli elementi di ogni cella vengono mantenuti in quell'ordine (vedi at).
+ * 
+ * Tutte le operazioni sono thread-safe.
+ * 
+ * @author Alessio Moiso
+ * @version 1.2
+ * @param <T> Il tipo degli elementi indicizzati
+ */
+public class SpatialGrid<T> {
+
+	/**
+	 * Ampiezza predefinita delle celle, in gradi (circa 1,1 km di latitudine).
+	 */
+	public static double DefaultCellSize = 0.01;
+	
+	private final double cellSize;
+	private final Comparator<? super T> order;
+	private final ConcurrentHashMap<Long, Set<T>> cells = new ConcurrentHashMap<Long, Set<T>>();
+	
+	public SpatialGrid() {
+		this(DefaultCellSize);
+	}
+	
+	public SpatialGrid(double cellSize) {
+		this(cellSize, null);
+	}
+	
+	/**
+	 * @param cellSize: L'ampiezza delle celle, in gradi
+	 * @param order: L'ordine in cui mantenere gli elementi di ogni cella, oppure null; due elementi in ordine uguale sono considerati lo stesso elemento
+	 */
+	public SpatialGrid(double cellSize, Comparator<? super T> order) {
+		this.cellSize = cellSize;
+		this.order = order;
+	}
+	
+	/**
+	 * Aggiunge un elemento nella cella che contiene la posizione specificata.
+	 */
+	public void add(GPSPosition position, T item) {
+		this.cells.computeIfAbsent(cellOf(position), key -> newCell()).add(item);
+	}
+	
+	/**
+	 * Rimuove un elemento dalla cella che contiene la posizione specificata.
+	 * 
+	 * @return true se l'elemento era presente
+	 */
+	public boolean remove(GPSPosition position, T item) {
+		Set<T> cell = this.cells.get(cellOf(position));
+		return (cell != null) && cell.remove(item);
+	}
+	
+	/**
+	 * Aggiunge un elemento in tutte le celle che intersecano il rettangolo che contiene il cerchio specificato.
+	 * 
+	 * @discussion In questo modo at restituisce, per ogni posizione, gli elementi il cui cerchio potrebbe contenerla.
+	 * 
+	 * @param center: Il centro del cerchio
+	 * @param range: Il raggio del cerchio, in km
+	 * @param item: L'elemento da aggiungere
+	 * @param maxCells: Il numero massimo di celle in cui aggiungere l'elemento
+	 * @return false se il rettangolo contiene più di maxCells celle, oppure vicino ai poli o all'antimeridiano: in questo caso l'elemento non viene aggiunto
+	 */
+	public boolean addArea(GPSPosition center, double range, T item, int maxCells) {
+		Area area = new Area(center, range);
+		if (area.unbounded || area.getCellCount() > maxCells) return false;
+		
+		for (long row = area.minRow; row <= area.maxRow; row++) {
+			for (long column = area.minColumn; column <= area.maxColumn; column++) {
+				this.cells.computeIfAbsent(key(row, column), key -> newCell()).add(item);
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Rimuove un elemento aggiunto tramite addArea, con lo stesso centro, lo stesso raggio e lo stesso numero massimo di celle.
+	 * 
+	 * @discussion Se il rettangolo contiene più di maxCells celle l'elemento non era stato aggiunto e non viene cercata alcuna cella.
+	 */
+	public void removeArea(GPSPosition center, double range, T item, int maxCells) {
+		Area area = new Area(center, range);
+		if (area.unbounded || area.getCellCount() > maxCells) return;
+		
+		for (long row = area.minRow; row <= area.maxRow; row++) {
+			for (long column = area.minColumn; column <= area.maxColumn; column++) {
+				Set<T> cell = this.cells.get(key(row, column));
+				
+				if (cell != null) {
+					cell.remove(item);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Restituisce gli elementi della cella che contiene la posizione specificata, nell'ordine della griglia (se specificato).
+	 * 
+	 * @discussion L'insieme restituito è quello usato dalla griglia: non deve essere modificato dal chiamante.
+	 */
+	public Set<T> at(GPSPosition position) {
+		Set<T> cell = this.cells.get(cellOf(position));
+		return (cell == null) ? Collections.<T>emptySet() : cell;
+	}
+	
+	/**
+	 * Restituisce gli elementi che potrebbero trovarsi entro il raggio specificato.
+	 * 
+	 * @param center: Il centro della ricerca
+	 * @param range: Il raggio della ricerca, in km
+	 * @return Un nuovo elenco con tutti gli elementi entro il raggio ed, eventualmente, alcuni elementi più lontani
+	 */
+	public List<T> candidates(GPSPosition center, double range) {
+		Area area = new Area(center, range);
+		if (area.unbounded) return all();
+		
+		ArrayList<T> candidates = new ArrayList<T>();
+		
+		if (area.getCellCount() > this.cells.size()) {
+			// Il rettangolo contiene più celle di quelle occupate: conviene scorrere direttamente le celle occupate.
+			for (Map.Entry<Long, Set<T>> cell : this.cells.entrySet()) {
+				if (area.contains(cell.getKey())) {
+					candidates.addAll(cell.getValue());
+				}
+			}
+			
+			return candidates;
+		}
+		
+		for (long row = area.minRow; row <= area.maxRow; row++) {
+			for (long column = area.minColumn; column <= area.maxColumn; column++) {
+				Set<T> cell = this.cells.get(key(row, column));
+				
+				if (cell != null) {
+					candidates.addAll(cell);
+				}
+			}
+		}
+		
+		return candidates;
+	}
+	
+	/**
+	 * Restituisce, in ordine di distanza crescente, i k elementi più vicini al centro entro il raggio specificato.
+	 * 
+	 * @param center: Il centro della ricerca
+	 * @param range: Il raggio della ricerca, in km
+	 * @param k: Il numero massimo di elementi da restituire
+	 * @param filter: Gli elementi da considerare (null per considerarli tutti); viene controllato prima di calcolare la distanza
+	 * @param distance: Calcola la distanza, in km, di un elemento dal centro
+	 * @return Un nuovo elenco con al più k elementi, tutti a distanza inferiore al raggio
+	 */
+	public List<T> nearest(GPSPosition center, double range, int k, Predicate<T> filter, ToDoubleFunction<T> distance) {
+		PriorityQueue<Neighbour<T>> best = new PriorityQueue<Neighbour<T>>(k, (first, second) -> Double.compare(second.distance, first.distance));
+		Area area = new Area(center, range);
+		
+		if (area.unbounded || area.getCellCount() > this.cells.size()) {
+			// Troppe celle da visitare ad anelli: vengono considerati direttamente tutti i candidati.
+			for (T item : candidates(center, range)) {
+				offer(best, k, item, range, filter, distance);
+			}
+		}
+		else {
+			ArrayList<Cell<T>> nearbyCells = new ArrayList<Cell<T>>();
+			
+			for (long row = area.minRow; row <= area.maxRow; row++) {
+				for (long column = area.minColumn; column <= area.maxColumn; column++) {
+					Set<T> cell = this.cells.get(key(row, column));
+					
+					if (cell != null && !cell.isEmpty()) {
+						nearbyCells.add(new Cell<T>(cell, area.getMinDistance(center, row, column)));
+					}
+				}
+			}
+			
+			Collections.sort(nearbyCells, (first, second) -> Double.compare(first.minDistance, second.minDistance));
+			
+			for (Cell<T> cell : nearbyCells) {
+				if (cell.minDistance >= range || (best.size() == k && cell.minDistance >= best.peek().distance)) break;
+				
+				for (T item : cell.items) {
+					offer(best, k, item, range, filter, distance);
+				}
+			}
+		}
+		
+		ArrayList<Neighbour<T>> sorted = new ArrayList<Neighbour<T>>(best);
+		Collections.sort(sorted, (first, second) -> Double.compare(first.distance, second.distance));
+		
+		ArrayList<T> nearest = new ArrayList<T>(sorted.size());
+		for (Neighbour<T> neighbour : sorted) {
+			nearest.add(neighbour.item);
+		}
+		
+		return nearest;
+	}
+	
+	/**
+	 * Restituisce l'identificativo della cella che contiene la posizione specificata.
+	 */
+	public long cellOf(GPSPosition position) {
+		return key(index(position.getLatitude()), index(position.getLongitude()));
+	}
+	
+	public double getCellSize() {
+		return this.cellSize;
+	}
+	
+	/**
+	 * Restituisce il numero di celle che contengono almeno un elemento (o che lo hanno contenuto).
+	 */
+	public int getCellCount() {
+		return this.cells.size();
+	}
+	
+	@Override
+	public String toString() {
+		return "Griglia: " + this.cells.size() + " celle occupate da " + this.cellSize + "°";
+	}
+	
+	/**
+	 * Inserisce un elemento tra i k più vicini, se rispetta il filtro, si trova entro il raggio ed è più vicino del k-esimo.
+	 */
+	private static <T> void offer(PriorityQueue<Neighbour<T>> best, int k, T item, double range, Predicate<T> filter, ToDoubleFunction<T> distance) {
+		if (filter != null && !filter.test(item)) return;
+		
+		double itemDistance = distance.applyAsDouble(item);
+		if (itemDistance >= range) return;
+		
+		if (best.size() < k) {
+			best.add(new Neighbour<T>(item, itemDistance));
+		}
+		else if (itemDistance < best.peek().distance) {
+			best.poll();
+			best.add(new Neighbour<T>(item, itemDistance));
+		}
+	}
+	
+	private Set<T> newCell() {
+		return (this.order == null) ? ConcurrentHashMap.newKeySet() : new ConcurrentSkipListSet<T>(this.order);
+	}
+	
+	private List<T> all() {
+		ArrayList<T> items = new ArrayList<T>();
+		
+		for (Set<T> cell : this.cells.values()) {
+			items.addAll(cell);
+		}
+		
+		return items;
+	}
+	
+	private long index(double coordinate) {
+		return (long) Math.floor(coordinate / this.cellSize);
+	}
+	
+	private static long key(long row, long column) {
+		return (row << 32) | (column & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Le celle del rettangolo che contiene il cerchio di ricerca, calcolato per eccesso.
+	 */
+	private class Area {
+	
+		final boolean unbounded;
+		final double widestParallel;
+		
+		long minRow, maxRow, minColumn, maxColumn;
+		
+		Area(GPSPosition center, double range) {
+			double latitudeSpan = range / GPSPosition.MinKilometersPerLatitudeDegree;
+			double minLatitude = center.getLatitude() - latitudeSpan;
+			double maxLatitude = center.getLatitude() + latitudeSpan;
+			
+			this.widestParallel = Math.max(Math.abs(minLatitude), Math.abs(maxLatitude));
+			
+			if (this.widestParallel >= 90) {
+				this.unbounded = true;
+				return;
+			}
+			
+			double longitudeSpan = range / (GPSPosition.KilometersPerLongitudeDegree * Math.cos(Math.toRadians(this.widestParallel)));
+			double minLongitude = center.getLongitude() - longitudeSpan;
+			double maxLongitude = center.getLongitude() + longitudeSpan;
+			
+			this.unbounded = (minLongitude < -180 || maxLongitude > 180);
+			
+			this.minRow = index(minLatitude);
+			this.maxRow = index(maxLatitude);
+			this.minColumn = index(minLongitude);
+			this.maxColumn = index(maxLongitude);
+		}
+		
+		long getCellCount() {
+			return (this.maxRow - this.minRow + 1) * (this.maxColumn - this.minColumn + 1);
+		}
+		
+		boolean contains(long row, long column) {
+			return row >= this.minRow && row <= this.maxRow && column >= this.minColumn && column <= this.maxColumn;
+		}
+		
+		boolean contains(long key) {
+			return contains(key >> 32, (int) key);
+		}
+		
+		/**
+		 * Restituisce, per difetto, la distanza in km tra il centro ed il punto più vicino della cella specificata.
+		 * 
+		 * @discussion Il limite vale per tutti i punti che si trovano entro il raggio, gli unici che interessano la ricerca:
+		 * il percorso più breve verso di essi non esce dalle latitudini del rettangolo, dove un grado di longitudine
+		 * è lungo almeno quanto sul parallelo più lontano dall'equatore.
+		 */
+		double getMinDistance(GPSPosition center, long row, long column) {
+			double latitudeGap = Math.max(0, Math.max(row * cellSize - center.getLatitude(), center.getLatitude() - (row + 1) * cellSize));
+			double longitudeGap = Math.max(0, Math.max(column * cellSize - center.getLongitude(), center.getLongitude() - (column + 1) * cellSize));
+			
+			return Math.max(latitudeGap * GPSPosition.MinKilometersPerLatitudeDegree, longitudeGap * GPSPosition.KilometersPerLongitudeDegree * Math.cos(Math.toRadians(this.widestParallel)));
+		}
+	
+	}
+	
+	/**
+	 * Gli elementi di una cella, con la distanza minima possibile tra la cella ed il centro della ricerca.
+	 */
+	private static class Cell<T> {
+	
+		final Set<T> items;
+		final double minDistance;
+		
+		Cell(Set<T> items, double minDistance) {
+			this.items = items;
+			this.minDistance = minDistance;
+		}
+	
+	}
+	
+	/**
+	 * Un elemento con la sua distanza dal centro della ricerca.
+	 */
+	private static class Neighbour<T> {
+	
+		final T item;
+		final double distance;
+		
+		Neighbour(T item, double distance) {
+			this.item = item;
+			this.distance = distance;
+		}
+	
+	}
+
+}
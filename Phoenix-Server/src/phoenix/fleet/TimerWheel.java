@@ -0,0 +1,115 @@
+package phoenix.fleet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Timer a ruota (hashed timer wheel): associa ad ogni elemento una scadenza e restituisce gli elementi scaduti.
+ * 
+ * @discussion Il tempo è diviso in intervalli (tick) della stessa durata e la ruota ha un numero fisso di posizioni:
+ * un elemento che scade al tick t viene messo nella posizione t modulo il numero di posizioni. schedule costa quindi O(1),
+ * mentre advance visita soltanto le posizioni dei tick trascorsi, lasciandovi gli elementi che scadono in un giro successivo.
+ * Gli elementi non possono essere annullati: chi li riceve da advance deve controllare se sono ancora validi.
+ * 
+ * schedule può essere chiamato da qualunque thread; advance viene eseguito da un solo thread per volta.
+ * 
+ * @author Alessio Moiso
+ * @version 1.0
+ * @param <T> Il tipo degli elementi
+ */
+public class TimerWheel<T> {
+
+	private final long tickDuration;
+	private final ArrayList<ConcurrentLinkedQueue<Timeout<T>>> slots;
+	private final ReentrantLock advanceLock = new ReentrantLock();
+	
+	/**
+	 * Il primo tick non ancora visitato da advance.
+	 */
+	private volatile long currentTick;
+	
+	/**
+	 * @param tickDuration: La durata di un tick, in millisecondi
+	 * @param slotCount: Il numero di posizioni della ruota
+	 * @param now: L'istante attuale, in millisecondi
+	 */
+	public TimerWheel(long tickDuration, int slotCount, long now) {
+		this.tickDuration = tickDuration;
+		this.slots = new ArrayList<ConcurrentLinkedQueue<Timeout<T>>>(slotCount);
+		this.currentTick = now / tickDuration;
+		
+		for (int i = 0; i < slotCount; i++) {
+			this.slots.add(new ConcurrentLinkedQueue<Timeout<T>>());
+		}
+	}
+	
+	/**
+	 * Aggiunge un elemento, che scadrà all'istante specificato.
+	 * 
+	 * @param item: L'elemento da aggiungere
+	 * @param deadline: L'istante di scadenza, in millisecondi (arrotondato per eccesso al tick successivo)
+	 */
+	public void schedule(T item, long deadline) {
+		long tick = Math.max((deadline + this.tickDuration - 1) / this.tickDuration, this.currentTick);
+		slot(tick).add(new Timeout<T>(item, tick));
+	}
+	
+	/**
+	 * Visita i tick trascorsi fino all'istante specificato e ne rimuove gli elementi scaduti.
+	 * 
+	 * @param now: L'istante attuale, in millisecondi
+	 * @return Un nuovo elenco con gli elementi scaduti
+	 */
+	public List<T> advance(long now) {
+		ArrayList<T> expired = new ArrayList<T>();
+		long lastTick = now / this.tickDuration;
+		
+		this.advanceLock.lock();
+		try {
+			for (long tick = this.currentTick; tick <= lastTick; tick++) {
+				Iterator<Timeout<T>> timeouts = slot(tick).iterator();
+				
+				while (timeouts.hasNext()) {
+					Timeout<T> timeout = timeouts.next();
+					
+					if (timeout.tick <= tick) {
+						timeouts.remove();
+						expired.add(timeout.item);
+					}
+				}
+				
+				// Dopo un'interruzione più lunga di un giro basta visitare ogni posizione una volta, con il tick più recente.
+				if (lastTick - tick >= this.slots.size()) tick = lastTick - this.slots.size();
+			}
+			
+			this.currentTick = Math.max(this.currentTick, lastTick + 1);
+		} finally {
+			this.advanceLock.unlock();
+		}
+		
+		return expired;
+	}
+	
+	private ConcurrentLinkedQueue<Timeout<T>> slot(long tick) {
+		return this.slots.get((int) Math.floorMod(tick, (long) this.slots.size()));
+	}
+	
+	/**
+	 * Un elemento con il tick in cui scade.
+	 */
+	private static class Timeout<T> {
+	
+		final T item;
+		final long tick;
+		
+		Timeout(T item, long tick) {
+			this.item = item;
+			this.tick = tick;
+		}
+	
+	}
+
+}
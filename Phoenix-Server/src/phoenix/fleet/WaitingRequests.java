@@ -0,0 +1,270 @@
+package phoenix.fleet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import phoenix.base.CarRequest;
+import phoenix.base.ParkingLot;
+
+/**
+ * Contiene le richieste per auto in attesa, indicizzate per tipo di auto e per posizione.
+ * 
+ * @discussion Ogni richiesta viene aggiunta, nella SpatialGrid del suo tipo di auto, a tutte le celle che intersecano
+ * il suo cerchio di ricerca: quando un'auto viene parcheggiata, claim considera soltanto le richieste del tipo dell'auto
+ * registrate nella cella del parcheggio, invece di calcolare la distanza di tutte le richieste in attesa.
+ * Le richieste con un raggio troppo ampio (più di MaxIndexedCells celle) vengono invece tenute in un elenco a parte, sempre controllato.
+ * 
+ * Le richieste vengono servite in ordine di arrivo: ogni richiesta riceve un numero progressivo quando viene messa in attesa
+ * ed in ogni cella (e nell'elenco delle richieste con raggio esteso) le richieste sono ordinate tramite questo numero.
+ * claim sceglie quindi la richiesta più vecchia che il parcheggio può soddisfare, fermandosi alla prima richiesta compatibile
+ * di ciascun elenco, senza confrontare tutte le richieste in attesa.
+ * 
+ * La mappa indicizzata tramite la chiave di sessione resta l'unico riferimento per stabilire se una richiesta è in attesa:
+ * una richiesta viene soddisfatta solo da chi riesce a rimuoverla dalla mappa. Tutte le operazioni sono thread-safe.
+ * 
+ * Ogni richiesta scade RequestTimeout millisecondi dopo essere stata messa in attesa: le scadenze sono gestite da un TimerWheel,
+ * quindi expire, chiamato periodicamente, considera soltanto le richieste in scadenza e non tutte quelle in attesa.
+ * 
+ * @author Alessio Moiso
+ * @version 1.2
+ */
+public class WaitingRequests {
+
+	/**
+	 * Numero massimo di celle in cui viene aggiunta una richiesta.
+	 */
+	private static int MaxIndexedCells = 64;
+	
+	/**
+	 * Tempo massimo di attesa di una richiesta, in millisecondi (0 per non farla mai scadere).
+	 */
+	public static long RequestTimeout = 10 * 60 * 1000;
+	
+	/**
+	 * Durata di un tick e numero di posizioni del TimerWheel delle scadenze: un giro dura poco più di otto minuti.
+	 */
+	public static long ExpiryTick = 1000;
+	private static int ExpirySlots = 512;
+	
+	private static final Comparator<Waiting> ArrivalOrder = (first, second) -> Long.compare(first.sequence, second.sequence);
+	
+	private final ConcurrentHashMap<String, Waiting> requests = new ConcurrentHashMap<String, Waiting>();
+	private final ConcurrentHashMap<Integer, SpatialGrid<Waiting>> gridsByType = new ConcurrentHashMap<Integer, SpatialGrid<Waiting>>();
+	private final ConcurrentHashMap<Integer, Set<Waiting>> wideRequestsByType = new ConcurrentHashMap<Integer, Set<Waiting>>();
+	
+	private final TimerWheel<Waiting> deadlines = new TimerWheel<Waiting>(ExpiryTick, ExpirySlots, now());
+	private final AtomicLong arrivals = new AtomicLong();
+	private final AtomicLong expiredRequests = new AtomicLong();
+	
+	/**
+	 * Mette in attesa una richiesta, sostituendo l'eventuale richiesta precedente della stessa sessione.
+	 * 
+	 * @discussion La richiesta viene messa in fondo all'ordine di arrivo, anche se sostituisce una richiesta precedente.
+	 */
+	public void put(CarRequest request) {
+		Waiting waiting = new Waiting(request, this.arrivals.incrementAndGet());
+		Waiting previous = this.requests.put(request.getSessionToken().getToken(), waiting);
+		
+		if (previous != null) {
+			unindex(previous);
+		}
+		
+		index(waiting);
+		
+		if (RequestTimeout > 0) {
+			this.deadlines.schedule(waiting, now() + RequestTimeout);
+		}
+	}
+	
+	/**
+	 * Annulla la richiesta in attesa di una sessione.
+	 * 
+	 * @param token: La chiave della sessione
+	 * @return La richiesta annullata, oppure null se la sessione non aveva richieste in attesa
+	 */
+	public CarRequest remove(String token) {
+		Waiting waiting = this.requests.remove(token);
+		
+		if (waiting == null) return null;
+		
+		unindex(waiting);
+		return waiting.request;
+	}
+	
+	/**
+	 * Cerca la richiesta in attesa da più tempo che possa essere soddisfatta da un'auto appena parcheggiata e la rimuove.
+	 * 
+	 * @param parkingLot: Il parcheggio in cui si trova l'auto
+	 * @param typeId: L'ID del tipo dell'auto
+	 * @return La richiesta rimossa da questa chiamata, oppure null se nessuna richiesta in attesa può essere soddisfatta
+	 */
+	public CarRequest claim(ParkingLot parkingLot, Integer typeId) {
+		SpatialGrid<Waiting> grid = this.gridsByType.get(typeId);
+		Set<Waiting> wideRequests = this.wideRequestsByType.get(typeId);
+		
+		while (true) {
+			Waiting oldest = (grid == null) ? null : oldest(grid.at(parkingLot.getPosition()), parkingLot);
+			Waiting oldestWide = (wideRequests == null) ? null : oldest(wideRequests, parkingLot);
+			
+			if (oldest == null || (oldestWide != null && oldestWide.sequence < oldest.sequence)) {
+				oldest = oldestWide;
+			}
+			
+			if (oldest == null) return null;
+			
+			// Se un altro thread ha rimosso la richiesta nel frattempo, viene cercata la successiva.
+			if (removeExact(oldest)) {
+				unindex(oldest);
+				return oldest.request;
+			}
+		}
+	}
+	
+	/**
+	 * Rimuove le richieste in attesa da più di RequestTimeout millisecondi.
+	 * 
+	 * @return Un nuovo elenco con le richieste rimosse da questa chiamata, i cui Client devono essere avvisati
+	 */
+	public List<CarRequest> expire() {
+		ArrayList<CarRequest> expired = new ArrayList<CarRequest>();
+		
+		for (Waiting waiting : this.deadlines.advance(now())) {
+			// Le richieste già soddisfatte, annullate o sostituite restano nel TimerWheel fino alla scadenza: vengono ignorate ora.
+			if (removeExact(waiting)) {
+				unindex(waiting);
+				expired.add(waiting.request);
+			}
+		}
+		
+		this.expiredRequests.addAndGet(expired.size());
+		return expired;
+	}
+	
+	/**
+	 * Restituisce il numero di richieste scadute dall'avvio.
+	 */
+	public long getExpiredCount() {
+		return this.expiredRequests.get();
+	}
+	
+	/**
+	 * Restituisce una copia delle richieste in attesa, indicizzate tramite la chiave di sessione.
+	 */
+	public ConcurrentHashMap<String, CarRequest> getRequests() {
+		ConcurrentHashMap<String, CarRequest> requests = new ConcurrentHashMap<String, CarRequest>();
+		
+		for (Map.Entry<String, Waiting> waiting : this.requests.entrySet()) {
+			requests.put(waiting.getKey(), waiting.getValue().request);
+		}
+		
+		return requests;
+	}
+	
+	public int size() {
+		return this.requests.size();
+	}
+	
+	@Override
+	public String toString() {
+		int wideRequests = 0;
+		for (Set<Waiting> requests : this.wideRequestsByType.values()) {
+			wideRequests += requests.size();
+		}
+		
+		return "Richieste in attesa: " + this.requests.size() + " (" + wideRequests + " con raggio esteso), " + this.expiredRequests.get() + " scadute";
+	}
+	
+	/**
+	 * Restituisce la richiesta in attesa da più tempo, tra quelle specificate, che il parcheggio può soddisfare.
+	 * 
+	 * @param candidates: Le richieste da considerare, in ordine di arrivo
+	 */
+	private Waiting oldest(Set<Waiting> candidates, ParkingLot parkingLot) {
+		for (Waiting waiting : candidates) {
+			if (this.requests.get(waiting.request.getSessionToken().getToken()) != waiting) {
+				// Richiesta già soddisfatta, annullata o sostituita, rimasta nell'indice: viene rimossa ora.
+				unindex(waiting);
+				continue;
+			}
+			
+			CarRequest request = waiting.request;
+			if (request.getCurrentPosition().isWithin(parkingLot.getPosition(), request.getSearchRange())) return waiting;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Rimuove dalla mappa la richiesta specificata, ma non un'altra richiesta della stessa sessione.
+	 * 
+	 * @return true se la richiesta era in attesa ed è stata rimossa da questa chiamata
+	 */
+	private boolean removeExact(Waiting waiting) {
+		return this.requests.remove(waiting.request.getSessionToken().getToken(), waiting);
+	}
+	
+	private static long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+	
+	private void index(Waiting waiting) {
+		CarRequest request = waiting.request;
+		SpatialGrid<Waiting> grid = this.gridsByType.computeIfAbsent(request.getCarTypeId(), key -> new SpatialGrid<Waiting>(SpatialGrid.DefaultCellSize, ArrivalOrder));
+		
+		waiting.indexed = grid.addArea(request.getCurrentPosition(), request.getSearchRange(), waiting, MaxIndexedCells);
+		if (!waiting.indexed) {
+			this.wideRequestsByType.computeIfAbsent(request.getCarTypeId(), key -> new ConcurrentSkipListSet<Waiting>(ArrivalOrder)).add(waiting);
+		}
+	}
+	
+	/**
+	 * Rimuove una richiesta dall'indice in cui è stata aggiunta da index: le celle della griglia oppure l'elenco delle richieste
+	 * con raggio esteso, così che il costo non dipenda dal raggio (che viene scelto dal Client).
+	 */
+	private void unindex(Waiting waiting) {
+		CarRequest request = waiting.request;
+		
+		if (waiting.indexed) {
+			SpatialGrid<Waiting> grid = this.gridsByType.get(request.getCarTypeId());
+			if (grid != null) {
+				grid.removeArea(request.getCurrentPosition(), request.getSearchRange(), waiting, MaxIndexedCells);
+			}
+		}
+		else {
+			Set<Waiting> wideRequests = this.wideRequestsByType.get(request.getCarTypeId());
+			if (wideRequests != null) {
+				wideRequests.remove(waiting);
+			}
+		}
+	}
+	
+	/**
+	 * Una richiesta in attesa, con il suo numero progressivo di arrivo.
+	 * 
+	 * @discussion Due istanze sono uguali solo se coincidono: una nuova richiesta della stessa sessione è sempre un'altra istanza.
+	 */
+	private static class Waiting {
+	
+		final CarRequest request;
+		final long sequence;
+		
+		/**
+		 * true se la richiesta è stata aggiunta alle celle della griglia, false se si trova nell'elenco delle richieste con raggio esteso.
+		 */
+		volatile boolean indexed;
+		
+		Waiting(CarRequest request, long sequence) {
+			this.request = request;
+			this.sequence = sequence;
+		}
+	
+	}
+
+}
@@ -0,0 +1,165 @@
+package phoenix.runnables;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import phoenix.base.Car;
+import phoenix.base.CarRequest;
+import phoenix.base.GPSPosition;
+import phoenix.base.ParkingLot;
+import phoenix.db.StorageEngine;
+import phoenix.fleet.Assignment;
+import phoenix.fleet.FleetRegistry;
+import phoenix.fleet.WaitingRequests;
+
+/**
+ * Implementa la ricerca di un'auto per più richieste contemporaneamente.
+ * 
+ * Le richieste ricevute vengono accodate tramite add; ad ogni esecuzione (vedi PhoenixServer.BatchWindow) vengono considerate
+ * insieme tutte le richieste accodate, divise per tipo di auto. Per ogni richiesta vengono cercati i parcheggi più vicini
+ * con auto disponibili del tipo richiesto ed ogni auto viene assegnata ad al più una richiesta, minimizzando la distanza totale:
+ * in questo modo una richiesta non prende l'auto che era l'unica raggiungibile da un'altra.
+ * 
+ * @discussion L'assegnamento ottimo (metodo ungherese) viene calcolato per i lotti fino a OptimalBatchSize richieste,
+ * mentre per i lotti più grandi le coppie richiesta-parcheggio vengono assegnate in ordine di distanza crescente,
+ * senza costruire la matrice dei costi.
+ * Le auto scelte vengono prelevate dal registro e solo dopo i Client vengono avvisati, tutti insieme, tramite Callback.
+ * Le richieste che restano senza auto (anche perché l'auto scelta è stata prelevata nel frattempo) seguono la normale
+ * procedura di SearchRunnable, che eventualmente le mette in attesa.
+ * 
+ * @author Alessio Moiso
+ * @version 1.1
+ */
+public class BatchSearchRunnable extends GenericRunnable {
+
+	/**
+	 * Numero massimo di richieste dello stesso tipo per cui viene calcolato l'assegnamento ottimo.
+	 */
+	public static int OptimalBatchSize = 64;
+	
+	/**
+	 * Numero di parcheggi più vicini considerati per ogni richiesta.
+	 */
+	private static int ParkingLotsPerRequest = 8;
+	
+	/**
+	 * Precisione della distanza usata come costo di ogni coppia (vedi GPSPosition.distanceTo): qualche centimetro
+	 * non cambia l'assegnamento in modo significativo.
+	 */
+	public static int CostAccuracy = GPSPosition.BoundedAccuracy;
+	
+	private final ConcurrentLinkedQueue<CarRequest> pending = new ConcurrentLinkedQueue<CarRequest>();
+	
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong batchedRequests = new AtomicLong();
+	private final AtomicLong matchedRequests = new AtomicLong();
+	
+	public BatchSearchRunnable(StorageEngine storage, FleetRegistry fleet, WaitingRequests requests) {
+		super(storage, fleet, requests);
+	}
+	
+	/**
+	 * Accoda una richiesta, che verrà considerata alla prossima esecuzione.
+	 */
+	public void add(CarRequest request) {
+		this.pending.add(request);
+	}
+	
+	@Override
+	public void run() {
+		LinkedHashMap<Integer, List<CarRequest>> requestsByType = new LinkedHashMap<Integer, List<CarRequest>>();
+		
+		CarRequest request;
+		while ((request = this.pending.poll()) != null) {
+			requestsByType.computeIfAbsent(request.getCarTypeId(), key -> new ArrayList<CarRequest>()).add(request);
+		}
+		
+		if (requestsByType.isEmpty()) return;
+		
+		ArrayList<CarRequest> matchedRequests = new ArrayList<CarRequest>();
+		ArrayList<Car> matchedCars = new ArrayList<Car>();
+		ArrayList<CarRequest> unmatched = new ArrayList<CarRequest>();
+		
+		for (Map.Entry<Integer, List<CarRequest>> requests : requestsByType.entrySet()) {
+			match(requests.getKey(), requests.getValue(), matchedRequests, matchedCars, unmatched);
+		}
+		
+		for (int i = 0; i < matchedRequests.size(); i++) {
+			CarRequest matchedRequest = matchedRequests.get(i);
+			
+			try {
+				matchedRequest.getCallback().setCar(matchedCars.get(i));
+			} catch (RemoteException e) {
+				e.printStackTrace();
+				System.out.println("\n\nERRORE: non è stato possibile completare la richiesta (" + matchedRequest + ") a causa di un problema nella comunicazione con il client.");
+			}
+			
+			this.storage.assignCar(matchedCars.get(i), matchedRequest.getSessionToken().getUsername());
+		}
+		
+		for (CarRequest otherRequest : unmatched) {
+			new SearchRunnable(this.storage, otherRequest, this.fleet, this.requests).run();
+		}
+		
+		this.batches.incrementAndGet();
+		this.batchedRequests.addAndGet(matchedRequests.size() + unmatched.size());
+		this.matchedRequests.addAndGet(matchedRequests.size());
+	}
+	
+	@Override
+	public String toString() {
+		return "Ricerca a lotti: " + this.batches.get() + " lotti, " + this.batchedRequests.get() + " richieste, " + this.matchedRequests.get() + " soddisfatte nel lotto";
+	}
+	
+	/**
+	 * Assegna le auto di un tipo alle richieste per quel tipo e le preleva dal registro.
+	 */
+	private void match(Integer typeId, List<CarRequest> requests, List<CarRequest> matchedRequests, List<Car> matchedCars, List<CarRequest> unmatched) {
+		// Ogni parcheggio vicino con auto disponibili è una colonna, che può essere assegnata a tante richieste
+		// quante sono le sue auto del tipo richiesto.
+		ArrayList<ParkingLot> parkingLots = new ArrayList<ParkingLot>();
+		HashMap<ParkingLot, Integer> columns = new HashMap<ParkingLot, Integer>();
+		ArrayList<Assignment.Pair> pairs = new ArrayList<Assignment.Pair>();
+		
+		for (int row = 0; row < requests.size(); row++) {
+			CarRequest request = requests.get(row);
+			
+			for (ParkingLot parkingLot : this.fleet.nearestParkingLots(request.getCurrentPosition(), request.getSearchRange(), ParkingLotsPerRequest, parkingLot -> parkingLot.getAvailableCount(typeId) > 0)) {
+				Integer column = columns.get(parkingLot);
+				if (column == null) {
+					column = parkingLots.size();
+					columns.put(parkingLot, column);
+					parkingLots.add(parkingLot);
+				}
+				
+				pairs.add(new Assignment.Pair(row, column, parkingLot.getPosition().distanceTo(request.getCurrentPosition(), CostAccuracy)));
+			}
+		}
+		
+		int[] capacities = new int[parkingLots.size()];
+		for (int column = 0; column < capacities.length; column++) {
+			capacities[column] = Math.min(parkingLots.get(column).getAvailableCount(typeId), requests.size());
+		}
+		
+		int[] assignment = (requests.size() <= OptimalBatchSize) ? Assignment.optimal(requests.size(), capacities, pairs) : Assignment.greedy(requests.size(), capacities, pairs);
+		
+		for (int row = 0; row < requests.size(); row++) {
+			Car car = (assignment[row] < 0) ? null : this.fleet.claim(parkingLots.get(assignment[row]), typeId);
+			
+			if (car != null) {
+				matchedRequests.add(requests.get(row));
+				matchedCars.add(car);
+			}
+			else {
+				unmatched.add(requests.get(row));
+			}
+		}
+	}
+
+}
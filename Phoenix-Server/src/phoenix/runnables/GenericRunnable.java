@@ -1,28 +1,26 @@
 package phoenix.runnables;
 
-import java.util.concurrent.ConcurrentHashMap;
-
-import phoenix.base.CarRequest;
-import phoenix.base.ParkingLot;
-import phoenix.db.DbLayer;
+import phoenix.db.StorageEngine;
+import phoenix.fleet.FleetRegistry;
+import phoenix.fleet.WaitingRequests;
 
 /**
  * Rappresenta un generico Runnable per Phoenix.
  * 
- * Contiene un collegamento al Database, l'elenco dei parcheggi e l'elenco delle richieste in attesa.
+ * Contiene un collegamento al sistema di memorizzazione, il registro dei parcheggi e l'elenco delle richieste in attesa.
  * 
  * @author Alessio Moiso
  * @version 1.0
  */
 public abstract class GenericRunnable implements Runnable {
 
-	final DbLayer dbLayer;
-	final ConcurrentHashMap<Integer, ParkingLot> parkingLots;
-	final ConcurrentHashMap<String, CarRequest> requests;
+	final StorageEngine storage;
+	final FleetRegistry fleet;
+	final WaitingRequests requests;
 	
-	public GenericRunnable(DbLayer layer, ConcurrentHashMap<Integer, ParkingLot> parkingLots, ConcurrentHashMap<String, CarRequest> requests) {
-		this.dbLayer = layer;
-		this.parkingLots = parkingLots;
+	public GenericRunnable(StorageEngine storage, FleetRegistry fleet, WaitingRequests requests) {
+		this.storage = storage;
+		this.fleet = fleet;
 		this.requests = requests;
 	}
 
@@ -1,48 +1,40 @@
 package phoenix.runnables;
 
 import java.rmi.RemoteException;
-import java.sql.SQLException;
-import java.util.concurrent.ConcurrentHashMap;
 
+import phoenix.base.Car;
 import phoenix.base.CarRequest;
 import phoenix.base.ParkRequest;
 import phoenix.base.ParkingLot;
-import phoenix.db.DbLayer;
+import phoenix.db.StorageEngine;
+import phoenix.fleet.FleetRegistry;
+import phoenix.fleet.WaitingRequests;
 
 /**
  * Implementa la procedura di conferma consegna di un'auto.
  * 
- * Tenta di aggiornare il Database: se l'operazione va a buon fine, rilascia l'attesa del Client impostando l'auto a null (tramite Callback).
- * Dopodiché, prova a soddisfare una delle richieste in attesa, se possibile, usando la macchina che è stata appena parcheggiata.
- * In caso non ci riesca, aggiunge definitvamente l'auto al Set di auto nel parcheggio.
+ * Registra la consegna tramite lo StorageEngine e rilascia l'attesa del Client impostando l'auto a null (tramite Callback).
+ * Dopodiché, prova a soddisfare una delle richieste in attesa, se possibile, usando la macchina che è stata appena parcheggiata:
+ * vengono considerate soltanto le richieste per lo stesso tipo di auto il cui raggio di ricerca può contenere il parcheggio
+ * e viene scelta quella in attesa da più tempo (vedi WaitingRequests); la richiesta viene rimossa dall'elenco in modo atomico,
+ * così che non possa essere soddisfatta due volte.
+ * In caso non ci riesca, aggiunge definitvamente l'auto al parcheggio nel registro.
  * 
  * @author Alessio Moiso
- * @version 1.0
+ * @version 1.1
  */
 public class ParkRunnable extends GenericRunnable {
 
 	private ParkRequest request;
 	
-	public ParkRunnable(DbLayer layer, ParkRequest request, ConcurrentHashMap<Integer, ParkingLot> parkingLots, ConcurrentHashMap<String, CarRequest> requests) {
-		super(layer, parkingLots, requests);
+	public ParkRunnable(StorageEngine storage, ParkRequest request, FleetRegistry fleet, WaitingRequests requests) {
+		super(storage, fleet, requests);
 		this.request = request;
 	}
 
 	@Override
 	public void run() {
-		try {
-			this.dbLayer.executeUpdate("UPDATE \"Car\" SET currentParkingLot = ? WHERE id = ?", this.request.getParkingLotId(), this.request.getParkedCar().getId());
-			this.dbLayer.executeUpdate("UPDATE \"User\" SET currentCar = NULL WHERE username = ?", this.request.getSessionToken().getUsername());
-		} catch (SQLException e) {
-			if (e.getErrorCode() == 19) {
-				System.out.println("\n\nERRORE: non è stato possibile completare la richiesta (" + this.request + ") a causa di un problema durante l'aggiornamento del Database.");
-			}
-			else {
-				e.printStackTrace();
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		this.storage.parkCar(this.request.getParkedCar(), this.request.getParkingLotId(), this.request.getSessionToken().getUsername());
 		
 		try {
 			this.request.getCallback().setCar(null);
@@ -51,45 +43,31 @@ public class ParkRunnable extends GenericRunnable {
 			System.out.println("\n\nERRORE: non è stato possibile completare la richiesta (" + this.request + ") a causa di un problema nella comunicazione con il client.");
 		}
 		
-		ParkingLot park = this.parkingLots.get(this.request.getParkingLotId());
+		ParkingLot park = this.fleet.getParkingLot(this.request.getParkingLotId());
+		Car parkedCar = this.request.getParkedCar();
 		
-		for (CarRequest otherRequest : this.requests.values()) {
-			Double distance = otherRequest.getCurrentPosition().getDistance(park.getPosition());
+		if (park == null) {
+			System.out.println("\n\nERRORE: non è stato possibile completare la richiesta (" + this.request + ") perché il parcheggio specificato non esiste.");
+			return;
+		}
+		
+		CarRequest otherRequest = this.requests.claim(park, parkedCar.getType().getId());
+		
+		if (otherRequest != null) {
+			System.out.println("\n\nINFO: è possibile soddisfare la richiesta (" + otherRequest +") considerate le mutate condizioni del sistema.");
 			
-			if (distance < otherRequest.getSearchRange()) {
-				if (otherRequest.getCarTypeId() == this.request.getParkedCar().getType().getId()) {
-					System.out.println("\n\nINFO: è possibile soddisfare la richiesta (" + otherRequest +") considerate le mutate condizioni del sistema.");
-					
-					synchronized (this.requests) {
-						if (this.requests.contains(otherRequest)) {
-							
-							try {
-								this.request.getCallback().setCar(this.request.getParkedCar());
-							} catch (RemoteException e) {
-								e.printStackTrace();
-								System.out.println("\n\nERRORE: non è stato possibile completare la richiesta (" + this.request + ") a causa di un problema nella comunicazione con il client.");
-							}
-							
-							try {
-								this.dbLayer.executeUpdate("UPDATE \"Car\" SET currentParkingLot = NULL WHERE id = ?", this.request.getParkedCar().getId());
-								this.dbLayer.executeUpdate("UPDATE \"User\" SET currentCar = ? WHERE username = ?", this.request.getParkedCar().getId(), this.request.getSessionToken().getUsername());
-							} catch (SQLException e) {
-								if (e.getErrorCode() == 19) {
-									System.out.println("\n\nERRORE: non è stato possibile completare la richiesta (" + this.request + ") a causa di un problema durante l'aggiornamento del Database.");
-								}
-								else {
-									e.printStackTrace();
-								}
-							}
-							return;
-							
-						}
-					}
-				}
+			try {
+				otherRequest.getCallback().setCar(parkedCar);
+			} catch (RemoteException e) {
+				e.printStackTrace();
+				System.out.println("\n\nERRORE: non è stato possibile completare la richiesta (" + otherRequest + ") a causa di un problema nella comunicazione con il client.");
 			}
+			
+			this.storage.assignCar(parkedCar, otherRequest.getSessionToken().getUsername());
+			return;
 		}
 		
-		park.add(this.request.getParkedCar());
+		this.fleet.park(this.request.getParkingLotId(), parkedCar);
 	}
 
 }
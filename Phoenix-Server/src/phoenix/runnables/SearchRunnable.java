@@ -1,91 +1,109 @@
 package phoenix.runnables;
 
 import java.rmi.RemoteException;
-import java.sql.SQLException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
+import java.util.List;
 
 import phoenix.base.Car;
 import phoenix.base.CarRequest;
 import phoenix.base.ParkingLot;
-import phoenix.db.DbLayer;
+import phoenix.db.StorageEngine;
+import phoenix.fleet.FleetRegistry;
+import phoenix.fleet.WaitingRequests;
 
 /**
  * Implementa la procedura di ricerca di un'auto.
  * 
- * Filtra tutti i parcheggi in base alla distanza, usando il raggio specificato nella CarRequest.
- * Dopodiché cerca un'auto che corrisponda ai requisiti di tipo: se la trova, blocca l'accesso all'HashMap
- * dei parcheggi e restituisce l'auto al Client (tramite Callback).
- * Infine, aggiorna il Database per riflettere la nuova situazione.
+ * Filtra i parcheggi in base alla distanza, usando il raggio specificato nella CarRequest ed il registro dei parcheggi.
+ * Dopodiché preleva da ciascun parcheggio, tramite l'indice per tipo, un'auto che corrisponda ai requisiti:
+ * il prelievo è atomico, quindi l'auto viene restituita al Client (tramite Callback) solo se nessun'altra richiesta l'ha ottenuta prima.
+ * Infine, registra l'assegnazione tramite lo StorageEngine.
+ * 
+ * @discussion Se NearestFirst è attivo, i parcheggi vengono visitati dal più vicino al più lontano, considerando solo quelli
+ * che hanno auto disponibili del tipo richiesto: all'utente viene quindi assegnata l'auto più vicina e la ricerca si ferma
+ * al primo prelievo riuscito. Altrimenti vengono visitati, in un ordine qualunque, tutti i parcheggi nel raggio.
  * 
  * @author Alessio Moiso
- * @version 1.0
+ * @version 1.1
  */
 public class SearchRunnable extends GenericRunnable {
 
+	/**
+	 * Visita i parcheggi in ordine di distanza crescente.
+	 */
+	public static boolean NearestFirst = true;
+	
+	/**
+	 * Numero di parcheggi più vicini cercati insieme: se in tutti l'auto viene prelevata prima da un'altra richiesta, la ricerca viene ripetuta.
+	 */
+	private static int NearestParkingLots = 4;
+	
 	private CarRequest request;
 	
-	public SearchRunnable(DbLayer layer, CarRequest request, ConcurrentHashMap<Integer, ParkingLot> parkingLots, ConcurrentHashMap<String, CarRequest> requestsQueue) {
-		super(layer, parkingLots, requestsQueue);
+	public SearchRunnable(StorageEngine storage, CarRequest request, FleetRegistry fleet, WaitingRequests requestsQueue) {
+		super(storage, fleet, requestsQueue);
 		this.request = request;
 	}
 	
 	@Override
 	public void run() {
-		ConcurrentHashMap<Integer, ParkingLot> parkingLotsNearby = parkingLotsInRange();
+		boolean claimed = NearestFirst ? claimNearest() : claimAny();
+		if (claimed) return;
 		
-		if (parkingLotsNearby.size() == 0) {
+		if (this.fleet.nearestParkingLots(this.request.getCurrentPosition(), this.request.getSearchRange(), 1, null).isEmpty()) {
 			System.out.println("\n\nINFO: non è stato possibile soddisfare la richiesta (" + this.request + ") perché l'utente si trova troppo distante da qualunque parcheggio.");
 			return;
 		}
 		
-		for (Map.Entry<Integer, ParkingLot> entry : parkingLotsNearby.entrySet()) {
-			for (Car car : entry.getValue()) {
-				if (car.getType().getId().equals(request.getCarTypeId())) {
-					synchronized (entry) {
-						if (parkingLotsNearby.get(entry.getKey()).contains(car)) {
-							
-							try {
-								this.request.getCallback().setCar(car);
-							} catch (RemoteException e) {
-								e.printStackTrace();
-								System.out.println("\n\nERRORE: non è stato possibile completare la richiesta (" + this.request + ") a causa di un problema nella comunicazione con il client.");
-							}
-							
-							entry.getValue().remove(car);
-							
-							try {
-								this.dbLayer.executeUpdate("UPDATE \"Car\" SET currentParkingLot = NULL WHERE id = ?", car.getId());
-								this.dbLayer.executeUpdate("UPDATE \"User\" SET currentCar = ? WHERE username = ?", car.getId(), this.request.getSessionToken().getUsername());
-							} catch (SQLException e) {
-								if (e.getErrorCode() == 19) {
-									System.out.println("\n\nERRORE: non è stato possibile completare la richiesta (" + this.request + ") a causa di un problema durante l'aggiornamento del Database.");
-								}
-								else {
-									e.printStackTrace();
-								}
-							}
-							return;
-						}
-					}
-				}
-			}
-			
-			System.out.println("\n\nINFO: non è stato possibile soddisfare la richiesta (" + this.request + ") perché non vi sono auto disponibili che soddisfano i requisiti di ricerca. L'utente verrà messo in attesa.");
-			this.requests.put(this.request.getSessionToken().getToken(), this.request);
-		}
+		System.out.println("\n\nINFO: non è stato possibile soddisfare la richiesta (" + this.request + ") perché non vi sono auto disponibili che soddisfano i requisiti di ricerca. L'utente verrà messo in attesa.");
+		this.requests.put(this.request);
 	}
 	
-	private ConcurrentHashMap<Integer, ParkingLot> parkingLotsInRange() {
-		ConcurrentHashMap<Integer, ParkingLot> parkingLotsNearby = new ConcurrentHashMap<Integer, ParkingLot>();
+	/**
+	 * Preleva un'auto dal parcheggio più vicino che ne ha una disponibile.
+	 * 
+	 * @return true se un'auto è stata assegnata all'utente
+	 */
+	private boolean claimNearest() {
+		Integer typeId = this.request.getCarTypeId();
+		List<ParkingLot> parkingLotsNearby;
 		
-		for (ParkingLot parkingLot : this.parkingLots.values()) {
-			if (parkingLot.isInRange(this.request.getCurrentPosition(), this.request.getSearchRange())) {
-				parkingLotsNearby.put(parkingLot.getId(), parkingLot);
+		do {
+			parkingLotsNearby = this.fleet.nearestParkingLots(this.request.getCurrentPosition(), this.request.getSearchRange(), NearestParkingLots, parkingLot -> parkingLot.getAvailableCount(typeId) > 0);
+			
+			for (ParkingLot parkingLot : parkingLotsNearby) {
+				if (claimFrom(parkingLot)) return true;
 			}
+		} while (!parkingLotsNearby.isEmpty());
+		
+		return false;
+	}
+	
+	/**
+	 * Preleva un'auto da un qualunque parcheggio nel raggio.
+	 * 
+	 * @return true se un'auto è stata assegnata all'utente
+	 */
+	private boolean claimAny() {
+		for (ParkingLot parkingLot : this.fleet.parkingLotsInRange(this.request.getCurrentPosition(), this.request.getSearchRange())) {
+			if (claimFrom(parkingLot)) return true;
 		}
 		
-		return parkingLotsNearby;
+		return false;
 	}
 	
+	private boolean claimFrom(ParkingLot parkingLot) {
+		Car car = this.fleet.claim(parkingLot, this.request.getCarTypeId());
+		if (car == null) return false;
+		
+		try {
+			this.request.getCallback().setCar(car);
+		} catch (RemoteException e) {
+			e.printStackTrace();
+			System.out.println("\n\nERRORE: non è stato possibile completare la richiesta (" + this.request + ") a causa di un problema nella comunicazione con il client.");
+		}
+		
+		this.storage.assignCar(car, this.request.getSessionToken().getUsername());
+		return true;
+	}
+
 }
@@ -2,6 +2,7 @@ package phoenix.server;
 
 import phoenix.base.*;
 
+import java.io.File;
 import java.io.IOException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
@@ -9,6 +10,11 @@ import java.sql.SQLException;
 import java.util.Map;
 import java.util.Scanner;
 
+import phoenix.db.JournalStorageEngine;
+import phoenix.db.MemoryStorageEngine;
+import phoenix.db.SqliteStorageEngine;
+import phoenix.db.StorageException;
+
 /**
  * Programma Server di Phoenix Car Sharing.
  * 
@@ -22,6 +28,20 @@ public class Main {
 	 */
 	private static String RegistryName = "PhoenixServer";
 	
+	/**
+	 * Argomento che avvia il Server con una flotta casuale in memoria, senza Database.
+	 * Può essere seguito dal numero di parcheggi da generare.
+	 */
+	private static String MemoryArgument = "--memory";
+	private static int MemoryParkingLots = 1000;
+	private static int MemoryCarsPerLot = 3;
+	
+	/**
+	 * Argomento che avvia il Server con lo stato della flotta in memoria, reso persistente da journal e snapshot
+	 * nella cartella indicata subito dopo. Al primo avvio lo stato viene copiato dal Database.
+	 */
+	private static String JournalArgument = "--journal";
+	
 	/**
 	 * Collegamento all'istanza Server rappresentata con questo processo.
 	 */
@@ -31,8 +51,20 @@ public class Main {
 		System.out.println("== PHOENIX SERVER version 1.0 ==\n\nAvvio il server…");
 		
 		try {
-			server = new PhoenixServer();
-		} catch (RemoteException | ClassNotFoundException | SQLException e1) { 
+			if (args.length > 0 && args[0].equals(MemoryArgument)) {
+				int parkingLots = (args.length > 1) ? Integer.parseInt(args[1]) : MemoryParkingLots;
+				
+				System.out.println("Genero " + parkingLots + " parcheggi in memoria…");
+				server = new PhoenixServer(MemoryStorageEngine.random(parkingLots, MemoryCarsPerLot, 0));
+			}
+			else if (args.length > 1 && args[0].equals(JournalArgument)) {
+				System.out.println("Carico lo stato della flotta da " + args[1] + "…");
+				server = new PhoenixServer(new JournalStorageEngine(new File(args[1]), () -> new SqliteStorageEngine(0)));
+			}
+			else {
+				server = new PhoenixServer();
+			}
+		} catch (RemoteException | ClassNotFoundException | SQLException | StorageException e1) { 
 			e1.printStackTrace();
 			
 			System.out.println("\n\nERRORE IRREVERSIBILE: non è stato possibile avviare il Server. L'applicazione verrà terminata.");
@@ -59,7 +91,7 @@ public class Main {
 		Scanner input = new Scanner(System.in);
 		
 		while (true) {
-			System.out.println("== PHOENIX SERVER ==\n\n1. Mostra riepilogo parcheggi\n\n2. Mostra utenti collegati\n\n3. Mostra utenti registrati\n\n4. Mostra richieste\n\n5. Mostra parco auto\n\n6. Mostra tipi di auto\n\n7. Interrompi servizio");
+			System.out.println("== PHOENIX SERVER ==\n\n1. Mostra riepilogo parcheggi\n\n2. Mostra utenti collegati\n\n3. Mostra utenti registrati\n\n4. Mostra richieste\n\n5. Mostra parco auto\n\n6. Mostra tipi di auto\n\n7. Mostra statistiche\n\n8. Interrompi servizio");
 			
 			System.out.print("\n> ");
 			int selection = input.nextInt();
@@ -90,12 +122,17 @@ public class Main {
 				break;
 				
 			case 7:
+				printStatistics();
+				break;
+			
+			case 8:
+				((PhoenixServer)server).close();
 				System.out.println("Servizio interrotto. L'applicazione verrà terminata.");
 				input.close();
 				return;
 				
 			default:
-				System.out.println("Opzione non disponibile. Inserisci un numero compreso tra 1 e 5.");
+				System.out.println("Opzione non disponibile. Inserisci un numero compreso tra 1 e 8.");
 				break;
 			}
 		}
@@ -167,6 +204,13 @@ public class Main {
 		waitForEnterKey();
 	}
 	
+	public static void printStatistics() {
+		System.out.println("\n\n== PHOENIX SERVER: Statistiche ==");
+		System.out.println(((PhoenixServer)server).getStatistics());
+		
+		waitForEnterKey();
+	}
+	
 	// Attende la pressione del tasto Invio prima di cancellare la schermata
 	private static void waitForEnterKey() {
 		System.out.println("\n\nPremi Invio per tornare al menù.");
@@ -2,16 +2,16 @@ package phoenix.server;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import phoenix.base.Car;
 import phoenix.base.CarRequest;
@@ -23,19 +23,28 @@ import phoenix.base.SessionToken;
 import phoenix.base.User;
 import phoenix.callables.LoginCallable;
 import phoenix.callables.RegisterCallable;
-import phoenix.db.DbLayer;
+import phoenix.db.SqliteStorageEngine;
+import phoenix.db.StorageEngine;
+import phoenix.db.StorageException;
 import phoenix.exceptions.InvalidCredentialsException;
 import phoenix.exceptions.UnexistingSessionException;
 import phoenix.exceptions.UnexistingUserException;
 import phoenix.exceptions.UserAlreadyRegisteredException;
+import phoenix.fleet.FleetRegistry;
+import phoenix.fleet.WaitingRequests;
+import phoenix.runnables.BatchSearchRunnable;
 import phoenix.runnables.ParkRunnable;
 import phoenix.runnables.SearchRunnable;
 
 /**
  * Implementazione di Server per Phoenix Car Sharing.
  * 
+ * @discussion Se BatchWindow è maggiore di zero, le ricerche non vengono eseguite appena ricevute, ma raccolte e considerate insieme
+ * ogni BatchWindow millisecondi (vedi BatchSearchRunnable). Le richieste in attesa da troppo tempo vengono annullate
+ * ad ogni tick di WaitingRequests ed i loro Client vengono avvisati tramite Callback.
+ * 
  * @author Alessio Moiso
- * @version 1.0
+ * @version 1.1
  */
 public class PhoenixServer extends UnicastRemoteObject implements Server {
 	
@@ -46,27 +55,90 @@ public class PhoenixServer extends UnicastRemoteObject implements Server {
 	 */
 	private static int ThreadsNumber = 4;
 	
+	/**
+	 * Intervallo, in millisecondi, in cui vengono raccolte le ricerche da considerare insieme (0 per eseguirle singolarmente).
+	 */
+	public static int BatchWindow = 0;
+	
 	/**
 	 * Sessioni attualmente attive sul Server.
 	 */
 	private ConcurrentHashMap<String, SessionToken> sessions;
 	
 	/**
-	 * Richieste per auto attualmente in attesa.
+	 * Richieste per auto attualmente in attesa, indicizzate per tipo di auto e per posizione.
 	 */
-	private ConcurrentHashMap<String, CarRequest> requests;
+	private WaitingRequests requests;
 	
 	private ExecutorService pool;
-	private DbLayer dbLayer;
+	
+	/**
+	 * Ricerca a lotti, se BatchWindow è maggiore di zero.
+	 */
+	private BatchSearchRunnable batchSearch;
+	
+	/**
+	 * Thread che esegue le operazioni periodiche: la scadenza delle richieste e la ricerca a lotti.
+	 */
+	private ScheduledExecutorService timers;
+	
+	/**
+	 * Sistema di memorizzazione dei dati (Database SQLite oppure memoria).
+	 */
+	private StorageEngine storage;
+	
+	/**
+	 * Stato attuale dei parcheggi, caricato all'avvio e condiviso da tutte le richieste.
+	 */
+	private FleetRegistry fleet;
 	
 	protected PhoenixServer() throws RemoteException, ClassNotFoundException, SQLException {
+		this(new SqliteStorageEngine(ThreadsNumber));
+	}
+	
+	protected PhoenixServer(StorageEngine storage) throws RemoteException {
 		super();
 		
 		this.pool = Executors.newFixedThreadPool(ThreadsNumber);
-		this.dbLayer = new DbLayer();
+		this.storage = storage;
+		
+		try {
+			this.fleet = new FleetRegistry(this.storage.loadFleet());
+		} catch (StorageException e) {
+			this.storage.close();
+			throw new RemoteException(e.getMessage(), e);
+		}
 		
 		this.sessions = new ConcurrentHashMap<String, SessionToken>();
-		this.requests = new ConcurrentHashMap<String, CarRequest>();
+		this.requests = new WaitingRequests();
+		
+		this.timers = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "Phoenix-Timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		this.timers.scheduleAtFixedRate(() -> {
+			try {
+				expireRequests();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				System.out.println("\n\nERRORE: non è stato possibile annullare le richieste scadute.");
+			}
+		}, WaitingRequests.ExpiryTick, WaitingRequests.ExpiryTick, TimeUnit.MILLISECONDS);
+		
+		if (BatchWindow > 0) {
+			this.batchSearch = new BatchSearchRunnable(this.storage, this.fleet, this.requests);
+			
+			this.timers.scheduleWithFixedDelay(() -> {
+				try {
+					this.batchSearch.run();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					System.out.println("\n\nERRORE: non è stato possibile completare la ricerca a lotti.");
+				}
+			}, BatchWindow, BatchWindow, TimeUnit.MILLISECONDS);
+		}
 	}
 
 	/**
@@ -88,12 +160,7 @@ public class PhoenixServer extends UnicastRemoteObject implements Server {
 	 */
 	@Override
 	public User login(String username, String password) throws InvalidCredentialsException, UnexistingUserException {
-		HashMap<String, User> users = null;
-		try {
-			users = getAllUsers();
-		} catch (RemoteException e1) { }
-		
-		Future<User> result = this.pool.submit(new LoginCallable(this.dbLayer, username, password, users));
+		Future<User> result = this.pool.submit(new LoginCallable(this.storage, username, password));
 		
 		try {
 			User user = result.get();
@@ -140,7 +207,7 @@ public class PhoenixServer extends UnicastRemoteObject implements Server {
 	@Override
 	public void register(String username, String password, String email,
 			String name, String surname) throws UserAlreadyRegisteredException {
-		Future<Void> result = this.pool.submit(new RegisterCallable(this.dbLayer, username, password, email, name, surname));
+		Future<Void> result = this.pool.submit(new RegisterCallable(this.storage, username, password, email, name, surname));
 		
 		try {
 			result.get();
@@ -164,7 +231,7 @@ public class PhoenixServer extends UnicastRemoteObject implements Server {
 	public void parkCar(ParkRequest request) throws UnexistingSessionException {
 		if (!this.sessions.containsKey(request.getSessionToken().getToken())) throw new UnexistingSessionException();
 		
-		this.pool.execute(new ParkRunnable(this.dbLayer, request, getParkingLots(), this.requests));
+		this.pool.execute(new ParkRunnable(this.storage, request, this.fleet, this.requests));
 	}
 
 	/**
@@ -177,50 +244,24 @@ public class PhoenixServer extends UnicastRemoteObject implements Server {
 	public void searchCar(CarRequest request) throws UnexistingSessionException {
 		if (!this.sessions.containsKey(request.getSessionToken().getToken())) throw new UnexistingSessionException();
 		
-		this.pool.execute(new SearchRunnable(this.dbLayer, request, getParkingLots(), this.requests));
+		if (this.batchSearch != null) {
+			this.batchSearch.add(request);
+		}
+		else {
+			this.pool.execute(new SearchRunnable(this.storage, request, this.fleet, this.requests));
+		}
 	}
 
 	/**
 	 * Ottiene un elenco dei parcheggi registrati nel sistema.
 	 * 
+	 * @discussion I parcheggi vengono letti dal registro in memoria, che riflette lo stato attuale della flotta.
+	 * 
 	 * @return Un'HashMap con l'elenco dei parcheggi
 	 */
 	@Override
 	public ConcurrentHashMap<Integer, ParkingLot> getParkingLots() {
-		ConcurrentHashMap<Integer, ParkingLot> parkingLots = new ConcurrentHashMap<Integer, ParkingLot>();
-		
-		try {
-			ResultSet results = this.dbLayer.executeQuery("SELECT id, name, address, latitude, longitude, altitude, lots FROM \"ParkingLot\"");
-			while (results.next()) {
-				ParkingLot lot = new ParkingLot(results.getInt("id"), results.getString("name"), results.getString("address"), results.getDouble("latitude"), results.getDouble("longitude"), results.getDouble("altitude"), results.getInt("lots"));
-				lot.addAll(getParkedCars(results.getInt("id")));
-				parkingLots.put(results.getInt("id"), lot);
-			}
-		} catch (SQLException e) { 
-			e.printStackTrace();
-			System.out.println("ERRORE: si è verificato un problema durante il caricamento dei parcheggi.");
-		}
-		
-		return parkingLots;
-	}
-	
-	/**
-	 * Ottiene il Set delle auto parcheggiate in un parcheggio specificato.
-	 * 
-	 * @param parkingLot: L'ID del parcheggio
-	 * @return Un Set di Car con le auto parcheggiate in questo parcheggio
-	 * @throws SQLException
-	 */
-	private Set<Car> getParkedCars(Integer parkingLot) throws SQLException {
-		Set<Car> cars = new HashSet<Car>();
-
-		ResultSet results = this.dbLayer.executeQuery("SELECT car.id AS carId, car.name AS carName, color, plate, type.id AS typeId, type.name AS typeName FROM \"Car\" LEFT JOIN \"Type\" ON \"Type\".id = \"Car\".type WHERE currentParkingLot = ?" , parkingLot);
-		
-		while (results.next()) {
-			cars.add(new Car(results.getInt("carId"), results.getString("carName"), results.getString("color"), results.getString("plate"), new CarType(results.getInt("typeId"), results.getString("typeName"))));
-		}
-		
-		return cars;
+		return this.fleet.getParkingLots();
 	}
 
 	/**
@@ -230,7 +271,7 @@ public class PhoenixServer extends UnicastRemoteObject implements Server {
 	 */
 	@Override
 	public ConcurrentHashMap<String, CarRequest> getCarRequests() {
-		return this.requests;
+		return this.requests.getRequests();
 	}
 
 	/**
@@ -248,19 +289,14 @@ public class PhoenixServer extends UnicastRemoteObject implements Server {
 	 */
 	@Override
 	public HashMap<Integer, CarType> getTypes() {
-		HashMap<Integer, CarType> types = new HashMap<Integer, CarType>();
-		
 		try {
-			ResultSet results = this.dbLayer.executeQuery("SELECT id, name FROM \"Type\"");
-			while (results.next()) {
-				types.put(results.getInt("id"), new CarType(results.getInt("id"), results.getString("name")));
-			}
-		} catch (SQLException e) { 
+			return this.storage.loadTypes();
+		} catch (StorageException e) { 
 			e.printStackTrace();
 			System.out.println("ERRORE: si è verificato un problema durante il caricamento delle categorie.");
 		}
 		
-		return types;
+		return new HashMap<Integer, CarType>();
 	}
 
 	/**
@@ -272,20 +308,14 @@ public class PhoenixServer extends UnicastRemoteObject implements Server {
 	 */
 	@Override
 	public HashMap<Integer, Car> getCars() {
-		HashMap<Integer, Car> cars = new HashMap<Integer, Car>();
-		
 		try {
-			ResultSet results = this.dbLayer.executeQuery("SELECT car.id AS carId, car.name AS carName, color, plate, type.id AS typeId, type.name AS typeName FROM \"Car\" LEFT JOIN \"Type\" ON \"Type\".id = \"Car\".type");
-			
-			while (results.next()) {
-				cars.put(results.getInt("carId"), new Car(results.getInt("carId"), results.getString("carName"), results.getString("color"), results.getString("plate"), new CarType(results.getInt("typeId"), results.getString("typeName"))));
-			}
-		} catch (SQLException e) { 
+			return this.storage.loadCars();
+		} catch (StorageException e) { 
 			e.printStackTrace();
 			System.out.println("ERRORE: si è verificato un problema durante il caricamento delle auto.");
 		}
 		
-		return cars;
+		return new HashMap<Integer, Car>();
 	}
 
 	/**
@@ -295,25 +325,67 @@ public class PhoenixServer extends UnicastRemoteObject implements Server {
 	 */
 	@Override
 	public HashMap<String, User> getAllUsers() throws RemoteException {
-		HashMap<String, User> users = new HashMap<String, User>();
-		
 		try {
-			ResultSet results = this.dbLayer.executeQuery("SELECT user.id AS userId, user.name AS usrName, surname, username, email, password, salt, car.id AS carId, car.name AS carName, car.color AS color, car.plate AS plate, type.id AS typeId, type.name AS typeName FROM \"User\" LEFT JOIN \"Car\" ON \"User\".currentCar = \"Car\".id  LEFT JOIN \"Type\" ON \"Type\".id = \"Car\".type");
-			while (results.next()) {
-				User user = new User(results.getString("username"), results.getString("email"), results.getString("usrName"), results.getString("surname"), results.getString("password"), results.getString("salt"));
+			return this.storage.loadUsers();
+		} catch (StorageException e) { 
+			e.printStackTrace();
+			System.out.println("ERRORE: si è verificato un problema durante il caricamento degli utenti.");
+		}
+		
+		return new HashMap<String, User>();
+	}
+	
+	/**
+	 * Restituisce un riepilogo sul funzionamento interno del Server.
+	 * 
+	 * @return Una stringa con una riga per ogni statistica disponibile.
+	 */
+	public String getStatistics() {
+		return this.storage.getStatistics() + "\n" + this.fleet.toString() + "\n" + this.requests.toString() + ((this.batchSearch == null) ? "" : "\n" + this.batchSearch.toString());
+	}
+	
+	/**
+	 * Annulla le richieste scadute ed avvisa i rispettivi Client, senza bloccare il thread delle operazioni periodiche.
+	 */
+	private void expireRequests() {
+		List<CarRequest> expired = this.requests.expire();
+		if (expired.isEmpty()) return;
+		
+		this.pool.execute(() -> {
+			for (CarRequest request : expired) {
+				System.out.println("\n\nINFO: la richiesta (" + request + ") è stata annullata perché è rimasta in attesa per più di " + (WaitingRequests.RequestTimeout / 1000) + " secondi.");
 				
-				if (results.getString("carId") != null) {
-					user.setLoadedCar(new Car(results.getInt("carId"), results.getString("carName"), results.getString("color"), results.getString("plate"), new CarType(results.getInt("typeId"), results.getString("typeName"))));
+				try {
+					request.getCallback().requestExpired();
+				} catch (RemoteException e) {
+					System.out.println("\n\nATTENZIONE: non è stato possibile avvisare il client della scadenza della richiesta (" + request + ").");
 				}
-				
-				users.put(results.getString("username"), user);
 			}
-		} catch (SQLException e) { 
-			e.printStackTrace();
-			System.out.println("ERRORE: si è verificato un problema durante il caricamento degli utenti.");
+		});
+	}
+	
+	/**
+	 * Arresta il Server: attende il completamento delle operazioni in corso, quindi chiude il sistema di memorizzazione.
+	 */
+	public void close() {
+		this.timers.shutdown();
+		
+		try {
+			this.timers.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) { }
+		
+		if (this.batchSearch != null) {
+			// Le ricerche raccolte dopo l'ultima esecuzione vengono completate subito.
+			this.batchSearch.run();
 		}
 		
-		return users;
+		this.pool.shutdown();
+		
+		try {
+			this.pool.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) { }
+		
+		this.storage.close();
 	}
 
 }